@@ -76,6 +76,16 @@ public final class MqttMessageConstants {
 	public static final String MQTT_CONNECTION_READY_SERVICE_PROPERTY_FILTER = "("
 			+ MQTT_CONNECTION_READY_SERVICE_PROPERTY + "=true)";
 
+	/**
+	 * The name of the service property of a reply-to whiteboard handler to
+	 * subscribe to its request channels as a member of the specified MQTT 5
+	 * shared subscription group such that the requests are distributed among the
+	 * handlers of the group.
+	 *
+	 * @since 1.1
+	 */
+	public static final String REPLY_TO_SUBSCRIPTION_SHARE_GROUP_PROPERTY = "mqtt.replyToSubscription.shareGroup";
+
 	/**
 	 * Standard constants for the {@code MQTT Messaging} extension features
 	 *
@@ -133,6 +143,142 @@ public final class MqttMessageConstants {
 		 * @since 1.0
 		 */
 		public static final String LAST_WILL_DELAY_INTERVAL = "lastWillDelayInterval";
+
+		/**
+		 * The name of the {@code reply-to timeout} extension. A value of {@code Long}
+		 * can be provided to specify the number of milliseconds to wait for a reply
+		 * before the reply-to request fails. A value less than or equal to zero
+		 * disables the deadline for the request.
+		 *
+		 * @since 1.1
+		 */
+		public static final String REPLY_TO_TIMEOUT = "replyToTimeout";
+
+		/**
+		 * The name of the {@code conflation} extension. A value of {@code Boolean}
+		 * can be provided to specify that only the latest value of the channel is of
+		 * interest. While a previous message to the same channel is still in flight or
+		 * the client is disconnected, a newer message replaces the not yet sent older
+		 * one. The publish request of a replaced message completes without sending it.
+		 *
+		 * @since 1.1
+		 */
+		public static final String CONFLATE = "conflate";
+
+		/**
+		 * The name of the {@code chunking} extension. A value of {@code Boolean} can
+		 * be provided to specify that a payload exceeding the configured chunk size
+		 * is split into several sequenced messages. The subscriber reassembles the
+		 * chunks and delivers a single message.
+		 *
+		 * @since 1.1
+		 */
+		public static final String CHUNKED = "chunked";
+
+		/**
+		 * The name of the {@code compression} extension. A value of {@code String}
+		 * can be provided to specify the algorithm ({@code gzip}, {@code deflate} or
+		 * {@code none}) to compress the payload with. It overrides the algorithm
+		 * configured for the publisher. The subscriber decompresses the payload
+		 * transparently.
+		 *
+		 * @since 1.1
+		 */
+		public static final String COMPRESSION = "compression";
+
+		/**
+		 * The name of the {@code stream buffer size} extension of a subscription. A
+		 * value of {@code Integer} can be provided to specify the capacity of the
+		 * queue that buffers the received messages until they are delivered to the
+		 * subscription stream.
+		 *
+		 * @since 1.1
+		 */
+		public static final String STREAM_BUFFER_SIZE = "streamBufferSize";
+
+		/**
+		 * The name of the {@code stream queue policy} extension of a subscription.
+		 * A value of {@code String} can be provided to specify what happens if the
+		 * buffer of the subscription stream is full - {@code FAIL} (default),
+		 * {@code DISCARD_OLDEST} or {@code BLOCK}. Refer to
+		 * {@code org.osgi.util.pushstream.QueuePolicyOption}.
+		 *
+		 * @since 1.1
+		 */
+		public static final String STREAM_QUEUE_POLICY = "streamQueuePolicy";
+
+		/**
+		 * The name of the {@code stream pushback policy} extension of a
+		 * subscription. A value of {@code String} can be provided to specify the
+		 * back-pressure applied by the subscription stream - {@code FIXED},
+		 * {@code ON_FULL_FIXED}, {@code ON_FULL_EXPONENTIAL}, {@code LINEAR} or
+		 * {@code LINEAR_AFTER_THRESHOLD}. Refer to
+		 * {@code org.osgi.util.pushstream.PushbackPolicyOption}.
+		 *
+		 * @since 1.1
+		 */
+		public static final String STREAM_PUSHBACK_POLICY = "streamPushbackPolicy";
+
+		/**
+		 * The name of the {@code stream pushback time} extension of a subscription.
+		 * A value of {@code Long} can be provided to specify the base pushback time
+		 * in milliseconds of the configured pushback policy.
+		 *
+		 * @since 1.1
+		 */
+		public static final String STREAM_PUSHBACK_TIME = "streamPushbackTimeInMillis";
+
+		/**
+		 * The name of the {@code stream parallelism} extension of a subscription. A
+		 * value of {@code Integer} can be provided to specify the maximum number of
+		 * messages delivered concurrently to the subscription stream.
+		 *
+		 * @since 1.1
+		 */
+		public static final String STREAM_PARALLELISM = "streamParallelism";
+
+		/**
+		 * The name of the {@code stream executor} extension of a subscription. A
+		 * {@code java.util.concurrent.Executor} can be provided to deliver the
+		 * received messages to the subscription stream.
+		 *
+		 * @since 1.1
+		 */
+		public static final String STREAM_EXECUTOR = "streamExecutor";
+
+		/**
+		 * The name of the {@code partitions} extension of a subscription. A value
+		 * of {@code Integer} can be provided to dispatch the received messages on
+		 * the specified number of parallel lanes. The messages are hashed onto the
+		 * lanes by their keys such that the messages of the same key are delivered
+		 * in order whereas the messages of different keys are delivered in
+		 * parallel.
+		 *
+		 * @since 1.1
+		 */
+		public static final String PARTITIONS = "partitions";
+
+		/**
+		 * The name of the {@code partition key} extension of a subscription. A
+		 * value of {@code String} can be provided to specify the user property
+		 * whose value is the key of a message. The channel of a message is used as
+		 * its key if not specified or if a message does not contain the user
+		 * property.
+		 *
+		 * @since 1.1
+		 */
+		public static final String PARTITION_KEY = "partitionKey";
+
+		/**
+		 * The name of the {@code share group} extension of a subscription. A value
+		 * of {@code String} can be provided to subscribe as a member of the
+		 * specified MQTT 5 shared subscription group, i.e. to
+		 * {@code $share/<group>/<filter>}, such that the broker distributes the
+		 * matching messages among the members of the group.
+		 *
+		 * @since 1.1
+		 */
+		public static final String SHARE_GROUP = "shareGroup";
 	}
 
 	/**
@@ -171,6 +317,14 @@ public final class MqttMessageConstants {
 		 */
 		public static final String PUBLISHER_REPLYTO = "in.bytehue.messaging.publisher.replyto";
 
+		/**
+		 * The configuration PID to configure the disk-backed outbox of the
+		 * publisher
+		 *
+		 * @since 1.1
+		 */
+		public static final String PUBLISHER_OUTBOX = "in.bytehue.messaging.publisher.outbox";
+
 		/**
 		 * The configuration PID to configure the internal executor in Reply-To
 		 * publisher
@@ -15,14 +15,28 @@
  ******************************************************************************/
 package in.bytehue.messaging.mqtt5.api;
 
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.CHUNKED;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.COMPRESSION;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.CONFLATE;
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.MESSAGE_EXPIRY_INTERVAL;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.PARTITIONS;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.PARTITION_KEY;
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.RECEIVE_LOCAL;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.REPLY_TO_TIMEOUT;
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.RETAIN;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.SHARE_GROUP;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.STREAM_BUFFER_SIZE;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.STREAM_EXECUTOR;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.STREAM_PARALLELISM;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.STREAM_PUSHBACK_POLICY;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.STREAM_PUSHBACK_TIME;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.STREAM_QUEUE_POLICY;
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.USER_PROPERTIES;
 import static org.osgi.service.messaging.Features.EXTENSION_QOS;
 
 import java.nio.ByteBuffer;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 import org.osgi.annotation.versioning.ProviderType;
@@ -229,4 +243,144 @@ public interface MqttMessageContextBuilder extends MessageContextBuilder {
 		return this;
 	}
 
+	/**
+	 * Sets the deadline of a reply-to request. The reply-to request fails if no
+	 * reply has been received within the specified time. The stream of replies
+	 * of a reply-to-many request is closed once the deadline has elapsed.
+	 *
+	 * @param timeoutInMillis the timeout in milliseconds ({@code 0} to wait
+	 *                        infinitely)
+	 * @return the {@link MqttMessageContextBuilder} instance
+	 * @since 1.1
+	 */
+	default MqttMessageContextBuilder withReplyToTimeout(final long timeoutInMillis) {
+		extensionEntry(REPLY_TO_TIMEOUT, timeoutInMillis);
+		return this;
+	}
+
+	/**
+	 * Sets the conflation flag for the publish request. A conflated message gets
+	 * replaced by a newer message to the same channel as long as it has not been
+	 * sent yet.
+	 *
+	 * @param conflate {@code true} to conflate the messages, otherwise
+	 *                 {@code false}
+	 * @return the {@link MqttMessageContextBuilder} instance
+	 * @since 1.1
+	 */
+	default MqttMessageContextBuilder withConflation(final boolean conflate) {
+		extensionEntry(CONFLATE, conflate);
+		return this;
+	}
+
+	/**
+	 * Sets the chunking flag for the publish request. The payload of a chunked
+	 * message gets split into several messages if it exceeds the configured chunk
+	 * size such that it is not limited by the maximum packet size.
+	 *
+	 * @param chunked {@code true} to split large payloads, otherwise
+	 *                {@code false}
+	 * @return the {@link MqttMessageContextBuilder} instance
+	 * @since 1.1
+	 */
+	default MqttMessageContextBuilder withChunking(final boolean chunked) {
+		extensionEntry(CHUNKED, chunked);
+		return this;
+	}
+
+	/**
+	 * Sets the algorithm to compress the payload of the publish request with. The
+	 * payload is only compressed if it exceeds the configured size threshold.
+	 *
+	 * @param algorithm the compression algorithm ({@code gzip}, {@code deflate}
+	 *                  or {@code none})
+	 * @return the {@link MqttMessageContextBuilder} instance
+	 * @since 1.1
+	 */
+	default MqttMessageContextBuilder withCompression(final String algorithm) {
+		extensionEntry(COMPRESSION, algorithm);
+		return this;
+	}
+
+	/**
+	 * Sets the buffer of the subscription stream that holds the received messages
+	 * until they are delivered.
+	 *
+	 * @param bufferSize  the capacity of the buffer
+	 * @param queuePolicy the policy to apply if the buffer is full
+	 *                    ({@code FAIL}, {@code DISCARD_OLDEST} or
+	 *                    {@code BLOCK})
+	 * @return the {@link MqttMessageContextBuilder} instance
+	 * @since 1.1
+	 */
+	default MqttMessageContextBuilder withStreamBuffer(final int bufferSize, final String queuePolicy) {
+		extensionEntry(STREAM_BUFFER_SIZE, bufferSize);
+		extensionEntry(STREAM_QUEUE_POLICY, queuePolicy);
+		return this;
+	}
+
+	/**
+	 * Sets the back-pressure policy of the subscription stream.
+	 *
+	 * @param pushbackPolicy the pushback policy ({@code FIXED},
+	 *                       {@code ON_FULL_FIXED}, {@code ON_FULL_EXPONENTIAL},
+	 *                       {@code LINEAR} or {@code LINEAR_AFTER_THRESHOLD})
+	 * @param timeInMillis   the base pushback time in milliseconds
+	 * @return the {@link MqttMessageContextBuilder} instance
+	 * @since 1.1
+	 */
+	default MqttMessageContextBuilder withStreamPushback(final String pushbackPolicy, final long timeInMillis) {
+		extensionEntry(STREAM_PUSHBACK_POLICY, pushbackPolicy);
+		extensionEntry(STREAM_PUSHBACK_TIME, timeInMillis);
+		return this;
+	}
+
+	/**
+	 * Sets the executor that delivers the received messages to the subscription
+	 * stream.
+	 *
+	 * @param executor    the executor
+	 * @param parallelism the maximum number of messages delivered concurrently
+	 * @return the {@link MqttMessageContextBuilder} instance
+	 * @since 1.1
+	 */
+	default MqttMessageContextBuilder withStreamExecutor(final Executor executor, final int parallelism) {
+		extensionEntry(STREAM_EXECUTOR, executor);
+		extensionEntry(STREAM_PARALLELISM, parallelism);
+		return this;
+	}
+
+	/**
+	 * Sets the number of lanes to dispatch the received messages on in parallel.
+	 * The messages of the same key are delivered in order.
+	 *
+	 * @param partitions   the number of lanes
+	 * @param partitionKey the user property whose value is the key of a message
+	 *                     ({@code null} to use the channel as the key)
+	 * @return the {@link MqttMessageContextBuilder} instance
+	 * @since 1.1
+	 */
+	default MqttMessageContextBuilder withPartitionedDispatch(final int partitions, final String partitionKey) {
+		extensionEntry(PARTITIONS, partitions);
+		if (partitionKey != null) {
+			extensionEntry(PARTITION_KEY, partitionKey);
+		}
+		return this;
+	}
+
+	/**
+	 * Subscribes as a member of the specified MQTT 5 shared subscription group,
+	 * i.e. to {@code $share/<group>/<channel>}. The broker delivers every matching
+	 * message to only one member of the group.
+	 *
+	 * @param group the name of the group (must not contain {@code /}, {@code +}
+	 *              or {@code #})
+	 * @return the {@link MqttMessageContextBuilder} instance
+	 * @since 1.1
+	 */
+	default MqttMessageContextBuilder withShareGroup(final String group) {
+		extensionEntry(SHARE_GROUP, group);
+		return this;
+	}
+
 }
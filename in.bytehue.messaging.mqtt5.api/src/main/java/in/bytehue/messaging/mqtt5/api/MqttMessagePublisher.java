@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.api;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.service.messaging.Message;
+import org.osgi.service.messaging.MessageContext;
+import org.osgi.service.messaging.MessagePublisher;
+import org.osgi.util.promise.Promise;
+
+/**
+ * The {@link MqttMessagePublisher} service is an extended {@link MessagePublisher}
+ * that additionally allows publishing {@code MQTT 5.0} messages without blocking
+ * the calling thread.
+ *
+ * <p>
+ * The returned {@link Promise} is resolved with the published {@link Message}
+ * as soon as the broker has acknowledged the message in accordance with its
+ * quality of service, i.e. immediately after sending for QoS 0, on
+ * {@code PUBACK} for QoS 1 and on {@code PUBCOMP} for QoS 2. The promise fails
+ * if the message could not be published.
+ *
+ * <p>
+ * <b>Note that</b>, access to this service requires the
+ * {@code ServicePermission[MqttMessagePublisher, GET]} permission.
+ * </p>
+ *
+ * @noimplement This interface is not intended to be implemented by consumers.
+ * @noextend This interface is not intended to be extended by consumers.
+ *
+ * @ThreadSafe
+ * @since 1.1
+ *
+ * @see MessagePublisher
+ */
+@ProviderType
+public interface MqttMessagePublisher extends MessagePublisher {
+
+	/**
+	 * Publishes the given {@link Message} asynchronously
+	 *
+	 * @param message the {@link Message} to publish
+	 * @return the {@link Promise} that gets resolved when the message has been
+	 *         published
+	 */
+	Promise<Message> publishAsync(Message message);
+
+	/**
+	 * Publishes the given {@link Message} to the given topic asynchronously
+	 *
+	 * @param message the {@link Message} to publish
+	 * @param channel the topic to publish the message to
+	 * @return the {@link Promise} that gets resolved when the message has been
+	 *         published
+	 */
+	Promise<Message> publishAsync(Message message, String channel);
+
+	/**
+	 * Publishes the given {@link Message} using the given {@link MessageContext}
+	 * asynchronously. The context parameter will override all context information,
+	 * that come with the message’s Message#getContext information
+	 *
+	 * @param message the {@link Message} to publish
+	 * @param context the {@link MessageContext} to be used
+	 * @return the {@link Promise} that gets resolved when the message has been
+	 *         published
+	 */
+	Promise<Message> publishAsync(Message message, MessageContext context);
+
+	/**
+	 * Publishes all the given {@link Message}s asynchronously. All messages are
+	 * handed over to the client back to back without waiting for the
+	 * acknowledgement of the previous one such that the publish requests are
+	 * pipelined on the connection.
+	 *
+	 * <p>
+	 * The returned {@link Promise} is resolved as soon as every single publish
+	 * request has been settled. It holds the individual result of every message
+	 * in the same order as the given collection such that partial failures can
+	 * be inspected by the caller.
+	 *
+	 * @param messages the {@link Message}s to publish
+	 * @return the {@link Promise} that gets resolved when all the publish requests
+	 *         have been settled
+	 */
+	Promise<List<Promise<Message>>> publishAll(Collection<Message> messages);
+
+}
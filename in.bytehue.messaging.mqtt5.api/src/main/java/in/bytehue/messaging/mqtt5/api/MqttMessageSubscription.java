@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.api;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.service.messaging.Message;
+import org.osgi.service.messaging.MessageContext;
+import org.osgi.service.messaging.MessageSubscription;
+import org.osgi.util.promise.Promise;
+import org.osgi.util.pushstream.PushStream;
+
+/**
+ * The {@link MqttMessageSubscription} service is an extended
+ * {@link MessageSubscription} that additionally allows subscribing to many
+ * {@code MQTT 5.0} topic filters at once as well as subscribing without
+ * blocking the calling thread.
+ *
+ * <p>
+ * <b>Note that</b>, access to this service requires the
+ * {@code ServicePermission[MqttMessageSubscription, GET]} permission.
+ * </p>
+ *
+ * @noimplement This interface is not intended to be implemented by consumers.
+ * @noextend This interface is not intended to be extended by consumers.
+ *
+ * @ThreadSafe
+ * @since 1.1
+ *
+ * @see MessageSubscription
+ */
+@ProviderType
+public interface MqttMessageSubscription extends MessageSubscription {
+
+	/**
+	 * Subscribes to the channels of all the given {@link MessageContext}s. Every
+	 * context provides its own quality of service and subscription options. All
+	 * topic filters that are not yet subscribed are requested from the broker in
+	 * a single {@code SUBSCRIBE} packet and the call blocks until its
+	 * {@code SUBACK} has been received.
+	 *
+	 * <p>
+	 * The returned streams are in the same order as the given collection. The
+	 * stream of a topic filter that has been rejected by the broker is closed.
+	 *
+	 * @param contexts the {@link MessageContext}s of the subscriptions
+	 * @return the {@link PushStream}s of the subscriptions
+	 */
+	List<PushStream<Message>> subscribeAll(Collection<MessageContext> contexts);
+
+	/**
+	 * Subscribes to the given topic asynchronously
+	 *
+	 * @param channel the topic to subscribe to
+	 * @return the {@link Promise} that gets resolved with the {@link PushStream}
+	 *         of the subscription when the broker has granted the subscription
+	 * @see #subscribeAsync(MessageContext)
+	 */
+	Promise<PushStream<Message>> subscribeAsync(String channel);
+
+	/**
+	 * Subscribes to the channel of the given {@link MessageContext}
+	 * asynchronously. The call returns immediately and the subscription is
+	 * requested from the broker in the background.
+	 *
+	 * <p>
+	 * The returned {@link Promise} is resolved with the {@link PushStream} of the
+	 * subscription as soon as the broker has granted the subscription in its
+	 * {@code SUBACK}. The promise fails with an {@link MqttSubscriptionException}
+	 * providing the reason code if the broker rejects the subscription and with
+	 * a {@link java.util.concurrent.TimeoutException} if no {@code SUBACK} has
+	 * been received in time.
+	 *
+	 * @param context the {@link MessageContext} of the subscription
+	 * @return the {@link Promise} that gets resolved with the {@link PushStream}
+	 *         of the subscription when the broker has granted the subscription
+	 */
+	Promise<PushStream<Message>> subscribeAsync(MessageContext context);
+
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.api;
+
+/**
+ * The {@link MqttSubscriptionException} is raised if the broker rejects the
+ * subscription to a topic filter. It provides the reason code that the broker
+ * has sent in the {@code SUBACK} for the topic filter.
+ *
+ * @since 1.1
+ */
+public class MqttSubscriptionException extends RuntimeException {
+
+	private static final long serialVersionUID = 4815003528738542281L;
+
+	private final String channel;
+	private final int reasonCode;
+
+	/**
+	 * Creates a new exception for the rejected subscription
+	 *
+	 * @param channel the rejected topic filter
+	 * @param reasonCode the reason code of the {@code SUBACK}
+	 * @param message the detail message
+	 */
+	public MqttSubscriptionException(final String channel, final int reasonCode, final String message) {
+		super(message);
+		this.channel = channel;
+		this.reasonCode = reasonCode;
+	}
+
+	/**
+	 * Returns the rejected topic filter
+	 *
+	 * @return the topic filter
+	 */
+	public String getChannel() {
+		return channel;
+	}
+
+	/**
+	 * Returns the reason code that the broker has sent in the {@code SUBACK}, for
+	 * example {@code 0x87} if the client is not authorized to subscribe
+	 *
+	 * @return the reason code
+	 */
+	public int getReasonCode() {
+		return reasonCode;
+	}
+
+}
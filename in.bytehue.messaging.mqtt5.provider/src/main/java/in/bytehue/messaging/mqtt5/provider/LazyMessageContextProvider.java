@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider;
+
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.RETAIN;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.USER_PROPERTIES;
+import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.asString;
+import static org.osgi.service.messaging.Features.EXTENSION_QOS;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.osgi.service.messaging.MessageContext;
+
+import com.hivemq.client.internal.mqtt.message.publish.MqttPublish;
+import com.hivemq.client.mqtt.datatypes.MqttTopic;
+import com.hivemq.client.mqtt.mqtt5.datatypes.Mqtt5UserProperty;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+
+import in.bytehue.messaging.mqtt5.provider.helper.MessageHelper;
+
+/**
+ * A {@link MessageContext} view of a received {@link Mqtt5Publish} that decodes
+ * every property of the publish only when it is read the first time. The
+ * decoded values are stored in the fields of {@link MessageContextProvider}
+ * such that they can still be overridden.
+ */
+public final class LazyMessageContextProvider extends MessageContextProvider {
+
+	private static final AtomicReferenceFieldUpdater<LazyMessageContextProvider, Runnable> SETTLEMENT =
+			AtomicReferenceFieldUpdater.newUpdater(LazyMessageContextProvider.class, Runnable.class, "settlement");
+
+	private final MqttPublish publish;
+	private final MessageContext subscriptionContext;
+
+	/** invoked once the delivery has been settled ({@code null} if not required or already invoked) */
+	private volatile Runnable settlement;
+
+	private volatile boolean isContentTypeDecoded;
+	private volatile boolean isContentEncodingDecoded;
+	private volatile boolean isCorrelationIdDecoded;
+	private volatile boolean isReplyToChannelDecoded;
+
+	public LazyMessageContextProvider(final Mqtt5Publish publish, final MessageContext subscriptionContext) {
+		this(publish, subscriptionContext, null);
+	}
+
+	public LazyMessageContextProvider(final Mqtt5Publish publish, final MessageContext subscriptionContext,
+			final Runnable settlement) {
+		super(null);
+		this.publish = (MqttPublish) publish;
+		this.subscriptionContext = subscriptionContext;
+		this.settlement = settlement;
+	}
+
+	@Override
+	public void settle() {
+		if (settlement != null) {
+			final Runnable s = SETTLEMENT.getAndSet(this, null);
+			if (s != null) {
+				s.run();
+			}
+		}
+	}
+
+	@Override
+	public String getChannel() {
+		if (channel == null) {
+			channel = publish.getTopic().toString();
+		}
+		return channel;
+	}
+
+	@Override
+	public String getContentType() {
+		if (!isContentTypeDecoded) {
+			contentType = publish.getContentType().map(MessageHelper::asString).orElse(null);
+			isContentTypeDecoded = true;
+		}
+		return contentType;
+	}
+
+	@Override
+	public String getContentEncoding() {
+		if (!isContentEncodingDecoded) {
+			contentEncoding = publish.getPayloadFormatIndicator().map(e -> e.name().toLowerCase()).orElse(null);
+			isContentEncodingDecoded = true;
+		}
+		return contentEncoding;
+	}
+
+	@Override
+	public String getCorrelationId() {
+		if (!isCorrelationIdDecoded) {
+			correlationId = asString(publish.getRawCorrelationData());
+			isCorrelationIdDecoded = true;
+		}
+		return correlationId;
+	}
+
+	@Override
+	public String getReplyToChannel() {
+		if (!isReplyToChannelDecoded) {
+			replyToChannel = publish.getResponseTopic().map(MqttTopic::toString).orElse(null);
+			isReplyToChannelDecoded = true;
+		}
+		return replyToChannel;
+	}
+
+	@Override
+	public synchronized Map<String, Object> getExtensions() {
+		if (extensions == null) {
+			final Map<String, Object> ext = new HashMap<>(subscriptionContext.getExtensions());
+			final Map<String, String> userProperties = new HashMap<>();
+
+			for (final Mqtt5UserProperty property : publish.getUserProperties().asList()) {
+				userProperties.put(property.getName().toString(), property.getValue().toString());
+			}
+			ext.put(EXTENSION_QOS, publish.getQos().getCode());
+			ext.put(RETAIN, publish.isRetain());
+			ext.put(USER_PROPERTIES, userProperties);
+
+			extensions = ext;
+		}
+		return extensions;
+	}
+
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider;
+
+import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.asString;
+import static in.bytehue.messaging.mqtt5.provider.helper.PayloadCodec.CONTENT_ENCODING;
+import static in.bytehue.messaging.mqtt5.provider.helper.PayloadCodec.Algorithm.NONE;
+
+import java.nio.ByteBuffer;
+
+import org.osgi.service.messaging.Message;
+import org.osgi.service.messaging.MessageContext;
+
+import com.hivemq.client.internal.mqtt.message.publish.MqttPublish;
+import com.hivemq.client.mqtt.mqtt5.datatypes.Mqtt5UserProperty;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+
+import in.bytehue.messaging.mqtt5.provider.helper.PayloadCodec;
+import in.bytehue.messaging.mqtt5.provider.helper.PayloadCodec.Algorithm;
+
+/**
+ * A {@link Message} view of a received {@link Mqtt5Publish} that does not copy
+ * the payload and decodes the context only if it is accessed. A compressed
+ * payload is decompressed when it is accessed the first time, and accessing it
+ * fails with an {@link IllegalStateException} if the decompressed payload
+ * exceeds the maximum size.
+ */
+public final class LazyMessageProvider implements Message {
+
+	private static final ByteBuffer EMPTY_PAYLOAD = ByteBuffer.wrap(new byte[0]);
+
+	private final MqttPublish publish;
+	private final long maxPayloadSize;
+	private final LazyMessageContextProvider messageContext;
+	private volatile ByteBuffer byteBuffer;
+
+	public LazyMessageProvider(final Mqtt5Publish publish, final MessageContext subscriptionContext) {
+		this(publish, subscriptionContext, null);
+	}
+
+	public LazyMessageProvider(final Mqtt5Publish publish, final MessageContext subscriptionContext,
+			final Runnable settlement) {
+		this(publish, subscriptionContext, settlement, PayloadCodec.DEFAULT_MAX_DECOMPRESSED_SIZE);
+	}
+
+	public LazyMessageProvider(final Mqtt5Publish publish, final MessageContext subscriptionContext,
+			final Runnable settlement, final long maxPayloadSize) {
+		this.publish = (MqttPublish) publish;
+		this.maxPayloadSize = maxPayloadSize;
+		messageContext = new LazyMessageContextProvider(publish, subscriptionContext, settlement);
+	}
+
+	@Override
+	public ByteBuffer payload() {
+		ByteBuffer buffer = byteBuffer;
+		if (buffer == null) {
+			buffer = decode(publish, maxPayloadSize);
+			byteBuffer = buffer;
+		}
+		return buffer;
+	}
+
+	private static ByteBuffer decode(final MqttPublish publish, final long maxPayloadSize) {
+		final ByteBuffer payload = publish.getRawPayload();
+		if (payload == null) {
+			return EMPTY_PAYLOAD.duplicate();
+		}
+		final Algorithm algorithm = getCompression(publish);
+		if (algorithm != null && algorithm != NONE) {
+			try {
+				return ByteBuffer.wrap(PayloadCodec.decompress(publish.getPayloadAsBytes(), algorithm, maxPayloadSize));
+			} catch (final IllegalArgumentException e) {
+				// the payload is not compressed as announced, hence it is delivered as is
+			}
+		}
+		// every message has its own view (position and limit) of the shared payload
+		return payload.duplicate();
+	}
+
+	private static Algorithm getCompression(final MqttPublish publish) {
+		for (final Mqtt5UserProperty property : publish.getUserProperties().asList()) {
+			if (CONTENT_ENCODING.equals(property.getName().toString())) {
+				return Algorithm.of(property.getValue().toString());
+			}
+		}
+		return NONE;
+	}
+
+	@Override
+	public MessageContext getContext() {
+		return messageContext;
+	}
+
+	// @formatter:off
+    @Override
+    public String toString() {
+        return new StringBuilder().append("Message [payload=")
+                                  .append(asString(payload()))
+                                  .append(", messageContext=")
+                                  .append(messageContext)
+                                  .append("]")
+                                  .toString();
+    }
+    // @formatter:on
+
+}
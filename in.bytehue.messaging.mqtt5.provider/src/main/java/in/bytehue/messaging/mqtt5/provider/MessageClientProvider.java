@@ -33,6 +33,8 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import javax.net.ssl.HostnameVerifier;
@@ -71,6 +73,7 @@ import com.hivemq.client.mqtt.mqtt5.advanced.interceptor.qos1.Mqtt5OutgoingQos1I
 import com.hivemq.client.mqtt.mqtt5.advanced.interceptor.qos2.Mqtt5IncomingQos2Interceptor;
 import com.hivemq.client.mqtt.mqtt5.advanced.interceptor.qos2.Mqtt5OutgoingQos2Interceptor;
 import com.hivemq.client.mqtt.mqtt5.auth.Mqtt5EnhancedAuthMechanism;
+import com.hivemq.client.mqtt.mqtt5.lifecycle.Mqtt5ClientConnectedContext;
 import com.hivemq.client.mqtt.mqtt5.message.connect.connack.Mqtt5ConnAck;
 import com.hivemq.client.mqtt.mqtt5.message.disconnect.Mqtt5DisconnectReasonCode;
 
@@ -185,7 +188,7 @@ public final class MessageClientProvider {
         int sendMaximumPacketSize() default 10_240; // 10KB
 
         @AttributeDefinition(name = "Maximum Topic Aliases")
-        int topicAliasMaximum() default 0;
+        int topicAliasMaximum() default 16;
 
         @AttributeDefinition(name = "MQTT over Web Socket")
         boolean useWebSocket() default false;
@@ -251,6 +254,11 @@ public final class MessageClientProvider {
     public volatile Config config;
     private Mqtt5ClientBuilder clientBuilder;
     private ServiceRegistration<Object> readyServiceReg;
+    private final List<Consumer<Mqtt5AsyncClient>> clientListeners = new CopyOnWriteArrayList<>();
+    private final List<Runnable> connectedListeners = new CopyOnWriteArrayList<>();
+
+    /** whether the broker has resumed the previous session on the latest connection */
+    private volatile boolean isSessionPresent;
 
 	@Activate
     void activate(final Config config, final Map<String, Object> properties) {
@@ -273,6 +281,42 @@ public final class MessageClientProvider {
         return config;
     }
 
+    /**
+     * Adds a listener that gets notified with every new client instance before it
+     * connects to the broker. If a client instance already exists, the listener
+     * gets notified immediately.
+     */
+    public synchronized void addClientListener(final Consumer<Mqtt5AsyncClient> listener) {
+        clientListeners.add(listener);
+        if (client != null) {
+            listener.accept(client);
+        }
+    }
+
+    public void removeClientListener(final Consumer<Mqtt5AsyncClient> listener) {
+        clientListeners.remove(listener);
+    }
+
+    /**
+     * Adds a listener that gets notified every time the client has (re)connected
+     * to the broker
+     */
+    public void addConnectedListener(final Runnable listener) {
+        connectedListeners.add(listener);
+    }
+
+    public void removeConnectedListener(final Runnable listener) {
+        connectedListeners.remove(listener);
+    }
+
+    /**
+     * Returns whether the broker has resumed the previous session of the client
+     * on the latest connection, i.e. the broker still keeps its subscriptions
+     */
+    public boolean isSessionPresent() {
+        return isSessionPresent;
+    }
+
     public void updateLWT(final MqttWillPublish lastWillMessage) {
         // disconnect but keep the previous session alive for 10 minutes before reconnection
         // previous session is stored to not remove any previous subscriptions
@@ -334,6 +378,10 @@ public final class MessageClientProvider {
 
         clientBuilder.addConnectedListener(this::registerReadyService);
         clientBuilder.addDisconnectedListener(this::unregisterReadyService);
+        clientBuilder.addConnectedListener(this::notifyConnectedListeners);
+        // the subscription provider re-issues all subscriptions in a single SUBSCRIBE
+        // if the broker has not kept the session instead of one SUBSCRIBE per request
+        clientBuilder.addDisconnectedListener(c -> c.getReconnector().resubscribeIfSessionExpired(false));
 
         if (config.automaticReconnectWithDefaultConfig()) {
             logger.debug("Applying Custom Automatic Reconnect Configuration");
@@ -517,7 +565,10 @@ public final class MessageClientProvider {
         }
 
         advancedConfig.applyAdvancedConfig();
-        client = clientBuilder.buildAsync();
+        synchronized (this) {
+            client = clientBuilder.buildAsync();
+            clientListeners.forEach(l -> l.accept(client));
+        }
 
         final CompletableFuture<Mqtt5ConnAck> ack =
                 client.toAsync()
@@ -605,6 +656,20 @@ public final class MessageClientProvider {
         readyServiceReg = bundleContext.registerService(Object.class, new Object(), properties);
     }
 
+    private void notifyConnectedListeners(final MqttClientConnectedContext context) {
+        // @formatter:off
+        isSessionPresent = context instanceof Mqtt5ClientConnectedContext
+                && ((Mqtt5ClientConnectedContext) context).getConnAck().isSessionPresent();
+        // @formatter:on
+        for (final Runnable listener : connectedListeners) {
+            try {
+                listener.run();
+            } catch (final Exception e) {
+                logger.error("Error occurred while notifying the connected listener", e);
+            }
+        }
+    }
+
     private synchronized void unregisterReadyService(final MqttClientDisconnectedContext context) {
     	try {
     		if (readyServiceReg != null) {
@@ -31,7 +31,7 @@ import org.osgi.service.messaging.acknowledge.AcknowledgeType;
 
 import in.bytehue.messaging.mqtt5.provider.helper.AcknowledgePair;
 
-public final class MessageContextProvider implements MessageContext, AcknowledgeMessageContext {
+public class MessageContextProvider implements MessageContext, AcknowledgeMessageContext {
 
 	public String channel;
 	public String contentType;
@@ -41,12 +41,29 @@ public final class MessageContextProvider implements MessageContext, Acknowledge
 	public String replyToChannel;
 
 	public volatile AcknowledgeType acknowledgeState;
-	public Map<String, Object> extensions = new HashMap<>();
+	public Map<String, Object> extensions;
 
 	public final AcknowledgePair<Predicate<Message>> acknowledgeFilter = AcknowledgePair.emptyOf(Predicate.class);
 	public final AcknowledgePair<Consumer<Message>> acknowledgeHandler = AcknowledgePair.emptyOf(Consumer.class);
 	public final AcknowledgePair<Consumer<Message>> acknowledgeConsumer = AcknowledgePair.emptyOf(Consumer.class);
 
+	public MessageContextProvider() {
+		this(new HashMap<>());
+	}
+
+	protected MessageContextProvider(final Map<String, Object> extensions) {
+		this.extensions = extensions;
+	}
+
+	/**
+	 * Stops tracking the acknowledge services specified using service filters
+	 */
+	public void closeAcknowledgeServices() {
+		acknowledgeFilter.close();
+		acknowledgeHandler.close();
+		acknowledgeConsumer.close();
+	}
+
 	@Override
 	public String getChannel() {
 		return channel;
@@ -92,6 +109,7 @@ public final class MessageContextProvider implements MessageContext, Acknowledge
 					return false;
 				}
 				acknowledgeState = REJECTED;
+				settle();
 				return true;
 			}
 
@@ -101,30 +119,39 @@ public final class MessageContextProvider implements MessageContext, Acknowledge
 					return false;
 				}
 				acknowledgeState = ACKNOWLEDGED;
+				settle();
 				return true;
 			}
 		};
 	}
 
+	/**
+	 * Settles the delivery of the received message, i.e. the message does not
+	 * need to be retained by the broker on behalf of this context anymore
+	 */
+	public void settle() {
+		// nothing to settle for messages that have not been received
+	}
+
 	// @formatter:off
     @Override
     public String toString() {
         return new StringBuilder().append("MessageContext [channel=")
-                                  .append(channel)
+                                  .append(getChannel())
                                   .append(", contentType=")
-                                  .append(contentType)
+                                  .append(getContentType())
                                   .append(", contentEncoding=")
-                                  .append(contentEncoding)
+                                  .append(getContentEncoding())
                                   .append(", correlationId=")
-                                  .append(correlationId)
+                                  .append(getCorrelationId())
                                   .append(", correlationIdGenerator=")
                                   .append(correlationIdGenerator)
                                   .append(", replyToChannel=")
-                                  .append(replyToChannel)
+                                  .append(getReplyToChannel())
                                   .append(", acknowledgeState=")
                                   .append(acknowledgeState)
                                   .append(", extensions=")
-                                  .append(extensions)
+                                  .append(getExtensions())
                                   .append("]")
                                   .toString();
     }
@@ -0,0 +1,412 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider;
+
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.ConfigurationPid.PUBLISHER_OUTBOX;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.osgi.service.component.annotations.ConfigurationPolicy.REQUIRE;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.log.Logger;
+import org.osgi.service.log.LoggerFactory;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.exceptions.ConnectionClosedException;
+import com.hivemq.client.mqtt.exceptions.MqttClientStateException;
+import com.hivemq.client.mqtt.exceptions.MqttSessionExpiredException;
+import com.hivemq.client.mqtt.mqtt5.datatypes.Mqtt5UserProperties;
+import com.hivemq.client.mqtt.mqtt5.datatypes.Mqtt5UserPropertiesBuilder;
+import com.hivemq.client.mqtt.mqtt5.datatypes.Mqtt5UserProperty;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5PayloadFormatIndicator;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5PublishBuilder;
+
+import in.bytehue.messaging.mqtt5.provider.MessagePersistentOutboxProvider.Config;
+import in.bytehue.messaging.mqtt5.provider.helper.SegmentedLog;
+import in.bytehue.messaging.mqtt5.provider.helper.ThreadFactoryBuilder;
+
+/**
+ * Stores the {@code QoS 1} and {@code QoS 2} publish requests durably before
+ * they are sent such that they survive restarts of the JVM. A request is
+ * acknowledged in the outbox as soon as the broker has acknowledged it. All
+ * unacknowledged requests are sent again in order after (re)connection.
+ */
+//@formatter:off
+@Designate(ocd = Config.class)
+@Component(
+        service = MessagePersistentOutboxProvider.class,
+        configurationPid = PUBLISHER_OUTBOX,
+        configurationPolicy = REQUIRE
+)
+public final class MessagePersistentOutboxProvider {
+
+    @ObjectClassDefinition(
+            name = "MQTT Messaging Persistent Outbox Configuration",
+            description = "This configuration is used to configure the disk-backed outbox of the QoS 1 and QoS 2 publish requests")
+    @interface Config {
+        @AttributeDefinition(name = "Directory to store the segment files in (the persistent storage area of the bundle if empty)")
+        String storageDirectory() default "";
+
+        @AttributeDefinition(name = "Size of a segment file in bytes")
+        int segmentSizeInBytes() default 4 * 1024 * 1024;
+
+        @AttributeDefinition(name = "Number of written records after which they are synchronized with the storage device")
+        int syncBatchSize() default 64;
+
+        @AttributeDefinition(name = "Maximum time after which the written records are synchronized with the storage device in milliseconds")
+        long syncIntervalInMillis() default 100L;
+    }
+    //@formatter:on
+
+	@Activate
+	private Config config;
+
+	@Activate
+	private BundleContext bundleContext;
+
+	@Reference(service = LoggerFactory.class)
+	private Logger logger;
+
+	@Reference
+	private MessageClientProvider messagingClient;
+
+	private SegmentedLog log;
+	private ScheduledExecutorService syncExecutor;
+	private final Runnable replayer = this::replay;
+
+	/** the unacknowledged publish requests by their sequences in the outbox */
+	private final ConcurrentSkipListMap<Long, PendingPublish> pendingPublishes = new ConcurrentSkipListMap<>();
+
+	/** guarded by this */
+	private boolean isReplaying;
+	/** requests the running replay to start over once it has reached the end (guarded by this) */
+	private boolean isReplayRequested;
+
+	@Activate
+	void activate() throws IOException {
+		final String storageDirectory = config.storageDirectory().trim();
+		final File directory = storageDirectory.isEmpty() ? bundleContext.getDataFile("outbox")
+				: new File(storageDirectory);
+
+		log = new SegmentedLog(directory, config.segmentSizeInBytes(), config.syncBatchSize());
+		log.open((sequence, data) -> pendingPublishes.put(sequence, new PendingPublish(sequence, deserialize(data))));
+		logger.info("Recovered {} unacknowledged publish requests from '{}'", pendingPublishes.size(), directory);
+
+		//@formatter:off
+        final ThreadFactory threadFactory =
+                new ThreadFactoryBuilder()
+                        .setThreadFactoryName("mqtt-persistent-outbox")
+                        .setThreadNameFormat("-sync-%d")
+                        .setDaemon(true)
+                        .build();
+        //@formatter:on
+		final long syncInterval = config.syncIntervalInMillis();
+		syncExecutor = newSingleThreadScheduledExecutor(threadFactory);
+		syncExecutor.scheduleWithFixedDelay(log::sync, syncInterval, syncInterval, MILLISECONDS);
+
+		messagingClient.addConnectedListener(replayer);
+		if (isConnected()) {
+			replay();
+		}
+	}
+
+	@Deactivate
+	void deactivate() {
+		messagingClient.removeConnectedListener(replayer);
+		syncExecutor.shutdown();
+		log.close();
+		// the requests are still stored and get replayed after the next activation
+		pendingPublishes.values().forEach(p -> p.result.completeExceptionally(
+				new IllegalStateException("Persistent outbox has been deactivated before the request was acknowledged")));
+		pendingPublishes.clear();
+	}
+
+	/**
+	 * Stores the specified publish request and sends it if the client is connected
+	 *
+	 * @param publish the publish request
+	 * @return the future that completes as soon as the broker has acknowledged the
+	 *         request
+	 */
+	public CompletableFuture<Void> send(final Mqtt5Publish publish) {
+		final PendingPublish pending;
+		final boolean isSendable;
+		synchronized (this) {
+			try {
+				final long sequence = log.append(serialize(publish));
+				pending = new PendingPublish(sequence, publish);
+			} catch (final IOException e) {
+				throw new RuntimeException("Publish request cannot be stored in the persistent outbox", e);
+			}
+			pendingPublishes.put(pending.sequence, pending);
+			// a running replay sends the request in order
+			isSendable = !isReplaying && isConnected();
+		}
+		if (isSendable) {
+			send(pending);
+		} else if (isConnected()) {
+			// the client might have been connected in the meantime
+			replay();
+		}
+		return pending.result;
+	}
+
+	/**
+	 * Returns the number of unacknowledged publish requests
+	 *
+	 * @return the number of unacknowledged publish requests
+	 */
+	public int size() {
+		return pendingPublishes.size();
+	}
+
+	private void replay() {
+		synchronized (this) {
+			if (isReplaying) {
+				isReplayRequested = true;
+				return;
+			}
+			isReplaying = true;
+		}
+		long lastSequence = -1L;
+		while (true) {
+			final PendingPublish pending;
+			synchronized (this) {
+				final Map.Entry<Long, PendingPublish> next = isConnected() ? pendingPublishes.higherEntry(lastSequence)
+						: null;
+				if (next == null) {
+					if (isReplayRequested && isConnected()) {
+						// the requests that have failed in the meantime are sent again
+						isReplayRequested = false;
+						lastSequence = -1L;
+						continue;
+					}
+					isReplayRequested = false;
+					isReplaying = false;
+					return;
+				}
+				pending = next.getValue();
+				lastSequence = pending.sequence;
+			}
+			if (!pending.isInFlight) {
+				send(pending);
+			}
+		}
+	}
+
+	private void send(final PendingPublish pending) {
+		pending.isInFlight = true;
+		// @formatter:off
+		messagingClient.client.publish(pending.publish)
+		                      .whenComplete((result, throwable) -> {
+		                          if (throwable != null) {
+		                              onFailure(pending, throwable);
+		                              return;
+		                          }
+		                          acknowledge(pending);
+		                          final Optional<Throwable> error = result.getError();
+		                          if (error.isPresent()) {
+		                              pending.result.completeExceptionally(error.get());
+		                          } else {
+		                              pending.result.complete(null);
+		                          }
+		                      });
+		// @formatter:on
+	}
+
+	private void onFailure(final PendingPublish pending, final Throwable throwable) {
+		final Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+		if (!isRetryable(cause)) {
+			// a request that can never be sent must not remain stuck in the outbox
+			logger.error("Publish request to '{}' has been discarded from the persistent outbox", pending.publish.getTopic(), cause);
+			acknowledge(pending);
+			pending.result.completeExceptionally(cause);
+			return;
+		}
+		// the request remains stored and gets replayed
+		pending.isInFlight = false;
+		if (isConnected()) {
+			// the connection has already been re-established, hence no connected listener replays it
+			logger.warn("Publish request to '{}' will be replayed", pending.publish.getTopic(), cause);
+			try {
+				syncExecutor.execute(replayer);
+			} catch (final RejectedExecutionException e) {
+				// the outbox has been deactivated and replays the request after the next activation
+			}
+		} else {
+			logger.warn("Publish request to '{}' will be replayed after reconnection", pending.publish.getTopic(), cause);
+		}
+	}
+
+	/**
+	 * Checks whether the specified failure is caused by the connection and the
+	 * request can therefore succeed if it is sent again
+	 */
+	private static boolean isRetryable(final Throwable cause) {
+		// @formatter:off
+		return cause instanceof ConnectionClosedException
+		        || cause instanceof MqttClientStateException
+		        || cause instanceof MqttSessionExpiredException;
+		// @formatter:on
+	}
+
+	private void acknowledge(final PendingPublish pending) {
+		pendingPublishes.remove(pending.sequence);
+		try {
+			log.acknowledge(pending.sequence);
+		} catch (final IOException e) {
+			logger.error("Publish request to '{}' cannot be acknowledged in the persistent outbox",
+					pending.publish.getTopic(), e);
+		}
+	}
+
+	private boolean isConnected() {
+		return messagingClient.client.getState().isConnected();
+	}
+
+	private static byte[] serialize(final Mqtt5Publish publish) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeUTF(publish.getTopic().toString());
+			out.writeByte(publish.getQos().getCode());
+			out.writeBoolean(publish.isRetain());
+			out.writeLong(publish.getMessageExpiryInterval().orElse(-1L));
+			out.writeByte(publish.getPayloadFormatIndicator().map(Mqtt5PayloadFormatIndicator::getCode).orElse(-1));
+			writeOptional(out, publish.getContentType().map(Object::toString).orElse(null));
+			writeOptional(out, publish.getResponseTopic().map(Object::toString).orElse(null));
+			writeBytes(out, publish.getCorrelationData().map(MessagePersistentOutboxProvider::toBytes).orElse(null));
+
+			final List<? extends Mqtt5UserProperty> userProperties = publish.getUserProperties().asList();
+			out.writeInt(userProperties.size());
+			for (final Mqtt5UserProperty property : userProperties) {
+				out.writeUTF(property.getName().toString());
+				out.writeUTF(property.getValue().toString());
+			}
+			writeBytes(out, publish.getPayloadAsBytes());
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Mqtt5Publish deserialize(final byte[] data) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+			// @formatter:off
+			final Mqtt5PublishBuilder.Complete builder =
+					Mqtt5Publish.builder()
+					                .topic(in.readUTF())
+					                .qos(MqttQos.fromCode(in.readByte()))
+					                .retain(in.readBoolean());
+			// @formatter:on
+			final long messageExpiryInterval = in.readLong();
+			if (messageExpiryInterval < 0) {
+				builder.noMessageExpiry();
+			} else {
+				builder.messageExpiryInterval(messageExpiryInterval);
+			}
+			final byte payloadFormat = in.readByte();
+			if (payloadFormat >= 0) {
+				builder.payloadFormatIndicator(Mqtt5PayloadFormatIndicator.fromCode(payloadFormat));
+			}
+			builder.contentType(readOptional(in));
+			builder.responseTopic(readOptional(in));
+			builder.correlationData(readBytes(in));
+
+			final Mqtt5UserPropertiesBuilder propsBuilder = Mqtt5UserProperties.builder();
+			final int numberOfUserProperties = in.readInt();
+			for (int i = 0; i < numberOfUserProperties; i++) {
+				propsBuilder.add(in.readUTF(), in.readUTF());
+			}
+			builder.userProperties(propsBuilder.build());
+			builder.payload(readBytes(in));
+			return builder.build();
+		} catch (final IOException e) {
+			throw new RuntimeException("Publish request cannot be read from the persistent outbox", e);
+		}
+	}
+
+	private static void writeOptional(final DataOutputStream out, final String value) throws IOException {
+		writeBytes(out, value == null ? null : value.getBytes(UTF_8));
+	}
+
+	private static String readOptional(final DataInputStream in) throws IOException {
+		final byte[] bytes = readBytes(in);
+		return bytes == null ? null : new String(bytes, UTF_8);
+	}
+
+	private static void writeBytes(final DataOutputStream out, final byte[] bytes) throws IOException {
+		if (bytes == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static byte[] readBytes(final DataInputStream in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	private static byte[] toBytes(final ByteBuffer buffer) {
+		final byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+
+	private static final class PendingPublish {
+
+		final long sequence;
+		final Mqtt5Publish publish;
+		final CompletableFuture<Void> result = new CompletableFuture<>();
+		volatile boolean isInFlight;
+
+		PendingPublish(final long sequence, final Mqtt5Publish publish) {
+			this.sequence = sequence;
+			this.publish = publish;
+		}
+	}
+
+}
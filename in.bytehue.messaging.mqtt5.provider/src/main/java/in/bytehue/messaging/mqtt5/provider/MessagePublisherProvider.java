@@ -21,30 +21,44 @@ import static com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5PayloadFormatInd
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.MESSAGING_ID;
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.MESSAGING_PROTOCOL;
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.ConfigurationPid.PUBLISHER;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.CHUNKED;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.COMPRESSION;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.CONFLATE;
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.LAST_WILL_DELAY_INTERVAL;
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.MESSAGE_EXPIRY_INTERVAL;
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.RETAIN;
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.USER_PROPERTIES;
+import static in.bytehue.messaging.mqtt5.provider.helper.BoundedOutbox.OverflowPolicy.DROP_OLDEST;
 import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.adapt;
 import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.adaptTo;
 import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.addTopicPrefix;
-import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.getCorrelationId;
 import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.getQoS;
+import static in.bytehue.messaging.mqtt5.provider.helper.PayloadCodec.CONTENT_ENCODING;
+import static in.bytehue.messaging.mqtt5.provider.helper.PayloadCodec.Algorithm.NONE;
 import static java.util.Collections.emptyMap;
+import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.osgi.service.messaging.Features.EXTENSION_GUARANTEED_DELIVERY;
 import static org.osgi.service.messaging.Features.EXTENSION_GUARANTEED_ORDERING;
 import static org.osgi.service.messaging.Features.EXTENSION_LAST_WILL;
+import static org.osgi.service.component.annotations.ReferenceCardinality.OPTIONAL;
+import static org.osgi.service.component.annotations.ReferencePolicy.DYNAMIC;
 import static org.osgi.service.messaging.Features.EXTENSION_QOS;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.osgi.framework.BundleContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.log.Logger;
 import org.osgi.service.log.LoggerFactory;
@@ -53,17 +67,33 @@ import org.osgi.service.messaging.MessageContext;
 import org.osgi.service.messaging.MessagePublisher;
 import org.osgi.service.messaging.propertytypes.MessagingFeature;
 import org.osgi.util.converter.TypeReference;
+import org.osgi.util.promise.Deferred;
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.PromiseFactory;
 
 import com.hivemq.client.internal.mqtt.message.publish.MqttWillPublish;
 import com.hivemq.client.mqtt.MqttClientState;
 import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5ClientConnectionConfig;
 import com.hivemq.client.mqtt.mqtt5.datatypes.Mqtt5UserProperties;
 import com.hivemq.client.mqtt.mqtt5.datatypes.Mqtt5UserPropertiesBuilder;
 import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5PayloadFormatIndicator;
-import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5PublishBuilder.Send.Complete;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5PublishBuilder;
 import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5PublishResult;
 
+import in.bytehue.messaging.mqtt5.api.MqttMessageCorrelationIdGenerator;
+import in.bytehue.messaging.mqtt5.api.MqttMessagePublisher;
+import in.bytehue.messaging.mqtt5.provider.helper.BoundedOutbox;
+import in.bytehue.messaging.mqtt5.provider.helper.BoundedOutbox.OverflowPolicy;
+import in.bytehue.messaging.mqtt5.provider.helper.ChunkAssembler;
+import in.bytehue.messaging.mqtt5.provider.helper.DefaultCorrelationIdGenerator;
 import in.bytehue.messaging.mqtt5.provider.helper.MessageHelper;
+import in.bytehue.messaging.mqtt5.provider.helper.PayloadCodec;
+import in.bytehue.messaging.mqtt5.provider.helper.PayloadCodec.Algorithm;
+import in.bytehue.messaging.mqtt5.provider.helper.TopicAliasStatistics;
+import in.bytehue.messaging.mqtt5.provider.helper.TopicTrie;
+import in.bytehue.messaging.mqtt5.provider.helper.TrackedService;
 
 //@formatter:off
 @MessagingFeature(
@@ -71,6 +101,9 @@ import in.bytehue.messaging.mqtt5.provider.helper.MessageHelper;
         protocol = MESSAGING_PROTOCOL,
         feature = {
                     RETAIN,
+                    CHUNKED,
+                    CONFLATE,
+                    COMPRESSION,
                     EXTENSION_QOS,
                     USER_PROPERTIES,
                     MESSAGE_EXPIRY_INTERVAL,
@@ -80,19 +113,32 @@ import in.bytehue.messaging.mqtt5.provider.helper.MessageHelper;
 )
 @Component(service = {
                        MessagePublisher.class,
+                       MqttMessagePublisher.class,
                        MessagePublisherProvider.class
                      },
            configurationPid = PUBLISHER
 )
 //@formatter:on
-public final class MessagePublisherProvider implements MessagePublisher {
+public final class MessagePublisherProvider implements MqttMessagePublisher {
 
-	@interface AwaitConfig {
+	@interface Config {
 		long timeoutInMillis() default 30_000L;
+
+		int outboxCapacity() default 1_000;
+
+		OverflowPolicy outboxOverflowPolicy() default DROP_OLDEST;
+
+		String[] conflatedTopicFilters() default {};
+
+		int chunkSizeInBytes() default 8_192;
+
+		Algorithm compression() default NONE;
+
+		int compressionThresholdInBytes() default 1_024;
 	}
 
 	@Activate
-	private AwaitConfig config;
+	private Config config;
 
 	@Reference(service = LoggerFactory.class)
 	private Logger logger;
@@ -103,9 +149,56 @@ public final class MessagePublisherProvider implements MessagePublisher {
 	@Reference
 	private MessageClientProvider messagingClient;
 
+	@Reference(cardinality = OPTIONAL, policy = DYNAMIC)
+	private volatile MessagePersistentOutboxProvider persistentOutbox;
+
 	@Activate
 	private BundleContext bundleContext;
 
+	private final PromiseFactory promiseFactory = new PromiseFactory(null);
+
+	/** generates the correlation identifiers if no generator service is specified */
+	private final MqttMessageCorrelationIdGenerator defaultCorrelationIdGenerator = new DefaultCorrelationIdGenerator();
+
+	/** the tracked correlation identifier generator services by their filters */
+	private final Map<String, TrackedService<MqttMessageCorrelationIdGenerator>> correlationIdGenerators = new ConcurrentHashMap<>();
+
+	/** stores the publish requests while the client is disconnected ({@code null} if disabled) */
+	private BoundedOutbox<PendingPublish> outbox;
+
+	/** tracks the topics that deserve the topic aliases granted by the broker */
+	private final TopicAliasStatistics topicAliasStatistics = new TopicAliasStatistics();
+
+	/** the filters of the channels whose messages are always conflated */
+	private final TopicTrie<String> conflatedTopics = new TopicTrie<>();
+
+	/** the latest not yet sent conflated publish requests by their channels */
+	private final Map<String, ConflationSlot> conflationSlots = new ConcurrentHashMap<>();
+
+	private final Runnable connectedListener = this::onConnected;
+
+	@Activate
+	void activate() {
+		if (config.outboxCapacity() > 0) {
+			outbox = new BoundedOutbox<>(config.outboxCapacity(), config.outboxOverflowPolicy(),
+					this::dropPendingPublish);
+		}
+		for (final String filter : config.conflatedTopicFilters()) {
+			conflatedTopics.add(filter, filter);
+		}
+		messagingClient.addConnectedListener(connectedListener);
+	}
+
+	@Deactivate
+	void deactivate() {
+		messagingClient.removeConnectedListener(connectedListener);
+		if (outbox != null) {
+			outbox.clear();
+		}
+		correlationIdGenerators.values().forEach(TrackedService::close);
+		correlationIdGenerators.clear();
+	}
+
 	@Override
 	public void publish(final Message message) {
 		publish(message, null, null);
@@ -121,126 +214,507 @@ public final class MessagePublisherProvider implements MessagePublisher {
 		publish(message, context, null);
 	}
 
-	private void publish(final Message message, MessageContext context, String channel) {
+	@Override
+	public Promise<Message> publishAsync(final Message message) {
+		return publishAsync(message, null, null);
+	}
+
+	@Override
+	public Promise<Message> publishAsync(final Message message, final String channel) {
+		return publishAsync(message, null, channel);
+	}
+
+	@Override
+	public Promise<Message> publishAsync(final Message message, final MessageContext context) {
+		return publishAsync(message, context, null);
+	}
+
+	@Override
+	public Promise<List<Promise<Message>>> publishAll(final Collection<Message> messages) {
+		final List<Promise<Message>> results = new ArrayList<>(messages.size());
+		// hand over the whole batch to the client back to back before waiting for any
+		// acknowledgement such that the requests get pipelined on the connection
+		for (final Message message : messages) {
+			results.add(publishAsync(message, null, null));
+		}
+		final Deferred<List<Promise<Message>>> deferred = promiseFactory.deferred();
+		if (results.isEmpty()) {
+			deferred.resolve(results);
+			return deferred.getPromise();
+		}
+		final AtomicInteger remaining = new AtomicInteger(results.size());
+		for (final Promise<Message> result : results) {
+			result.onResolve(() -> {
+				if (remaining.decrementAndGet() == 0) {
+					deferred.resolve(results);
+				}
+			});
+		}
+		return deferred.getPromise();
+	}
+
+	private void publish(final Message message, final MessageContext context, final String channel) {
 		try {
-			if (context == null) {
-				context = message.getContext();
+			final CompletableFuture<Message> resultFuture = send(message, context, channel, false);
+			if (resultFuture != null) {
+				resultFuture.get(config.timeoutInMillis(), MILLISECONDS);
 			}
-			if (channel == null) {
-				channel = context.getChannel();
+		} catch (final ExecutionException e) {
+			logger.error("Error while publishing data to {}", channel, e);
+			throw new RuntimeException(e.getCause());
+		} catch (final Exception e) {
+			logger.error("Error while publishing data to {}", channel, e);
+			throw new RuntimeException(e);
+		}
+	}
+
+	private Promise<Message> publishAsync(final Message message, final MessageContext context, final String channel) {
+		final Deferred<Message> deferred = promiseFactory.deferred();
+		try {
+			final CompletableFuture<Message> resultFuture = send(message, context, channel, true);
+			if (resultFuture == null) {
+				deferred.fail(new IllegalStateException("Cannot publish the message since the client is disconnected"));
+			} else {
+				resultFuture.whenComplete((m, t) -> {
+					if (t != null) {
+						deferred.fail(t);
+					} else {
+						deferred.resolve(m);
+					}
+				});
 			}
-			final MqttClientState clientState = messagingClient.client.getState();
-			if (clientState == DISCONNECTED || clientState == DISCONNECTED_RECONNECT) {
-				logger.warn("Cannot publish the message to '{}' since the client is disconnected", channel);
-				return;
+		} catch (final Exception e) {
+			logger.error("Error while publishing data to {}", channel, e);
+			deferred.fail(e);
+		}
+		return deferred.getPromise();
+	}
+
+	/**
+	 * Returns the statistics of the topic aliases
+	 *
+	 * @return the topic alias statistics
+	 */
+	public TopicAliasStatistics topicAliasStatistics() {
+		return topicAliasStatistics;
+	}
+
+	/**
+	 * Returns the predefined correlation identifier of the specified context or
+	 * generates a new one using the generator service specified in the context
+	 * (if available) or the default generator
+	 *
+	 * @param messageContext the message context
+	 * @return the correlation identifier
+	 */
+	String getCorrelationId(final MessageContextProvider messageContext) {
+		final String predefinedCorrelationId = messageContext.getCorrelationId();
+		if (predefinedCorrelationId != null) {
+			return predefinedCorrelationId;
+		}
+		final String filter = messageContext.correlationIdGenerator;
+		if (filter == null) {
+			return defaultCorrelationIdGenerator.generate();
+		}
+		final TrackedService<MqttMessageCorrelationIdGenerator> service = correlationIdGenerators.computeIfAbsent(filter,
+				this::trackCorrelationIdGenerator);
+		final MqttMessageCorrelationIdGenerator generator = service == null ? null : service.get();
+		if (generator == null) {
+			return defaultCorrelationIdGenerator.generate();
+		}
+		final String generatedId = generator.generate();
+		requireNonNull(generatedId, "'MqttMessageCorrelationIdGenerator' (filter: " + filter + ") returned 'null' value");
+		return generatedId;
+	}
+
+	private TrackedService<MqttMessageCorrelationIdGenerator> trackCorrelationIdGenerator(final String filter) {
+		try {
+			return TrackedService.of(MqttMessageCorrelationIdGenerator.class, filter, bundleContext);
+		} catch (final Exception e) {
+			logger.warn("Service '{}' cannot be tracked using the filter '{}'",
+					MqttMessageCorrelationIdGenerator.class.getName(), filter, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Sends the publish request without waiting for the broker acknowledgement. If
+	 * the client is disconnected, the request is stored in the outbox (if enabled)
+	 * and sent as soon as the client gets connected again.
+	 *
+	 * @param awaitStored {@code true} to return the future of a request stored in
+	 *            the outbox while the client is disconnected, otherwise
+	 *            {@code null} is returned for such request
+	 * @return the future that completes when the message has been published or
+	 *         {@code null} if the message cannot be published due to a
+	 *         disconnected client
+	 */
+	private CompletableFuture<Message> send(final Message message, MessageContext context, String channel,
+			final boolean awaitStored) throws InterruptedException {
+		if (context == null) {
+			context = message.getContext();
+		}
+		if (channel == null) {
+			channel = context.getChannel();
+		}
+		final boolean isDisconnected = isDisconnected();
+		// LWT update requests cannot be stored as they require a connected client
+		if (isDisconnected && context.getExtensions().containsKey(EXTENSION_LAST_WILL)) {
+			logger.warn("Cannot publish the message to '{}' since the client is disconnected", channel);
+			return null;
+		}
+		final Mqtt5Publish publish = toPublish(message, context, channel);
+		if (publish == null) {
+			// LWT update requests are not published
+			return CompletableFuture.completedFuture(message);
+		}
+		if (isChunked(context, publish)) {
+			return sendChunked(message, publish, channel, isDisconnected, awaitStored);
+		}
+		if (isConflated(context, channel)) {
+			final PendingPublish pending = new PendingPublish(message, publish);
+			conflate(channel, pending);
+			return isDisconnected && !awaitStored ? null : pending.result;
+		}
+		return send(message, publish, channel, isDisconnected, awaitStored);
+	}
+
+	private CompletableFuture<Message> send(final Message message, final Mqtt5Publish publish, final String channel,
+			final boolean isDisconnected, final boolean awaitStored) throws InterruptedException {
+		final MessagePersistentOutboxProvider persistentOutbox = this.persistentOutbox;
+		if (persistentOutbox != null && publish.getQos() != MqttQos.AT_MOST_ONCE) {
+			// the request is stored durably and sent by the persistent outbox
+			final CompletableFuture<Message> resultFuture = persistentOutbox.send(publish).thenApply(v -> message);
+			return isDisconnected && !awaitStored ? null : resultFuture;
+		}
+		if (outbox != null) {
+			final PendingPublish pending = new PendingPublish(message, publish);
+			if (outbox.offer(pending, isDisconnected, config.timeoutInMillis())) {
+				logger.debug("Publish request to '{}' has been stored in the outbox", channel);
+				// the client might have been connected in the meantime
+				if (!isDisconnected()) {
+					drainOutbox();
+				}
+				// a request stored while the client is connected (the outbox is still
+				// draining) is awaited like any other request
+				return isDisconnected && !awaitStored ? null : pending.result;
 			}
-			// add topic prefix if available
-			final String prefix = messagingClient.config.topicPrefix();
-			channel = addTopicPrefix(channel, prefix);
+		}
+		if (isDisconnected) {
+			logger.warn("Cannot publish the message to '{}' since the client is disconnected", channel);
+			return null;
+		}
+		return send(message, publish);
+	}
 
-			final String ch = channel; // needed for lambda as it needs to be effectively final :(
-			final Map<String, Object> extensions = context.getExtensions();
+	private boolean isChunked(final MessageContext context, final Mqtt5Publish publish) {
+		final Object isChunked = context.getExtensions().get(CHUNKED);
+		return isChunked != null && adaptTo(isChunked, boolean.class, converter)
+				&& publish.getPayload().map(ByteBuffer::remaining).orElse(0) > config.chunkSizeInBytes();
+	}
 
-			final String contentType = context.getContentType();
-			final String replyToChannel = context.getReplyToChannel();
-			final String correlationId = getCorrelationId((MessageContextProvider) context, bundleContext, logger);
-			final ByteBuffer content = message.payload();
+	/**
+	 * Sends the payload of the specified request as sequenced chunks which are
+	 * reassembled by the subscribers
+	 */
+	private CompletableFuture<Message> sendChunked(final Message message, final Mqtt5Publish publish,
+			final String channel, final boolean isDisconnected, final boolean awaitStored) throws InterruptedException {
+		final String transferId = defaultCorrelationIdGenerator.generate();
+		final List<Mqtt5Publish> chunks = ChunkAssembler.split(publish, config.chunkSizeInBytes(), transferId);
+		logger.debug("Publish request to '{}' has been split into {} chunks", channel, chunks.size());
 
-			final Object messageExpiry = extensions.getOrDefault(MESSAGE_EXPIRY_INTERVAL, null);
-			final Long messageExpiryInterval = adaptTo(messageExpiry, Long.class, converter);
+		final CompletableFuture<?>[] results = new CompletableFuture<?>[chunks.size()];
+		boolean isCompletionTracked = true;
+		for (int i = 0; i < results.length; i++) {
+			// all the chunks are handed over even if some of them are only stored
+			results[i] = send(message, chunks.get(i), channel, isDisconnected, awaitStored);
+			isCompletionTracked &= results[i] != null;
+		}
+		return isCompletionTracked ? CompletableFuture.allOf(results).thenApply(v -> message) : null;
+	}
 
-			final int qos = getQoS(extensions, converter);
+	private boolean isDisconnected() {
+		final MqttClientState clientState = messagingClient.client.getState();
+		return clientState == DISCONNECTED || clientState == DISCONNECTED_RECONNECT;
+	}
 
-			final Object isRetain = extensions.getOrDefault(RETAIN, false);
-			final boolean retain = adaptTo(isRetain, boolean.class, converter);
+	private void onConnected() {
+		// @formatter:off
+		final int topicAliasMaximum =
+				messagingClient.client.getConfig()
+				                      .getConnectionConfig()
+				                      .map(Mqtt5ClientConnectionConfig::getSendTopicAliasMaximum)
+				                      .orElse(0);
+		// @formatter:on
+		topicAliasStatistics.setCapacity(topicAliasMaximum);
+		if (outbox != null) {
+			drainOutbox();
+		}
+		conflationSlots.values().forEach(this::sendConflated);
+	}
 
-			final String contentEncoding = context.getContentEncoding();
+	private boolean isConflated(final MessageContext context, final String channel) {
+		final Object isConflated = context.getExtensions().get(CONFLATE);
+		if (isConflated != null) {
+			return adaptTo(isConflated, boolean.class, converter);
+		}
+		if (conflatedTopics.isEmpty()) {
+			return false;
+		}
+		final boolean[] isMatched = new boolean[1];
+		conflatedTopics.match(channel, f -> isMatched[0] = true);
+		return isMatched[0];
+	}
 
-			final Object lastWillDelay = extensions.getOrDefault(LAST_WILL_DELAY_INTERVAL, 0L);
-			final long lastWillDelayInterval = adaptTo(lastWillDelay, long.class, converter);
+	/**
+	 * Sends the specified request if no other request to the same channel is in
+	 * flight, otherwise it replaces the not yet sent request of the channel (if
+	 * any)
+	 */
+	private void conflate(final String channel, final PendingPublish pending) {
+		while (true) {
+			final ConflationSlot slot = conflationSlots.computeIfAbsent(channel, ConflationSlot::new);
+			final PendingPublish replaced;
+			synchronized (slot) {
+				// the slot has been removed from the table in the meantime
+				if (slot.isRetired) {
+					continue;
+				}
+				replaced = slot.latest;
+				slot.latest = pending;
+			}
+			if (replaced != null) {
+				logger.trace("Publish request to '{}' has been replaced by a newer one", channel);
+				replaced.result.complete(replaced.message);
+			}
+			// the connection state is checked again as a reconnection might have
+			// processed the slot before the request has been stored in it
+			if (!isDisconnected()) {
+				sendConflated(slot);
+			}
+			return;
+		}
+	}
 
-			Mqtt5PayloadFormatIndicator payloadFormat = null;
-			if ("UTF-8".equalsIgnoreCase(contentEncoding)) {
-				payloadFormat = UTF_8;
+	private void sendConflated(final ConflationSlot slot) {
+		final PendingPublish pending;
+		synchronized (slot) {
+			if (!slot.isInFlight && slot.latest == null) {
+				// an idle slot is removed such that channels that are not used anymore
+				// do not occupy the table
+				slot.isRetired = true;
+				conflationSlots.remove(slot.channel, slot);
+				return;
+			}
+			if (slot.isInFlight || slot.latest == null || isDisconnected()) {
+				return;
+			}
+			pending = slot.latest;
+			slot.latest = null;
+			slot.isInFlight = true;
+		}
+		send(pending.message, pending.publish).whenComplete((m, t) -> {
+			synchronized (slot) {
+				slot.isInFlight = false;
+			}
+			if (t != null) {
+				pending.result.completeExceptionally(t);
+			} else {
+				pending.result.complete(m);
 			}
+			// send the latest value that arrived in the meantime
+			sendConflated(slot);
+		});
+	}
 
-			// @formatter:off
-            final Object userProp = extensions.getOrDefault(USER_PROPERTIES, emptyMap());
-            final Map<String, String> userProperties =
-                    adapt(
-                            userProp,
-                            new TypeReference<Map<String, String>>() {},
-                            converter);
-
-            final Mqtt5UserPropertiesBuilder propsBuilder = Mqtt5UserProperties.builder();
-            userProperties.forEach(propsBuilder::add);
-
-            final Complete<CompletableFuture<Mqtt5PublishResult>> publishRequest =
-                    messagingClient.client.publishWith()
-                                              .topic(channel)
-                                              .payloadFormatIndicator(payloadFormat)
-                                              .contentType(contentType)
-                                              .payload(content)
-                                              .qos(MqttQos.fromCode(qos))
-                                              .retain(retain)
-                                              .responseTopic(replyToChannel)
-                                              .correlationData(correlationId.getBytes())
-                                              .userProperties(propsBuilder.build());
-
-            if (messageExpiryInterval == null || messageExpiryInterval == 0) {
-                publishRequest.noMessageExpiry();
-            } else {
-                publishRequest.messageExpiryInterval(messageExpiryInterval);
-            }
+	private void drainOutbox() {
+		// @formatter:off
+		outbox.drain(() -> !isDisconnected(),
+		             p -> send(p.message, p.publish).whenComplete((m, t) -> {
+		                      if (t != null) {
+		                          p.result.completeExceptionally(t);
+		                      } else {
+		                          p.result.complete(m);
+		                      }
+		                  }));
+		// @formatter:on
+	}
+
+	private void dropPendingPublish(final PendingPublish pending) {
+		logger.warn("Publish request to '{}' has been dropped from the outbox", pending.publish.getTopic());
+		pending.result.completeExceptionally(
+				new IllegalStateException("Publish request has been dropped from the outbox of the disconnected client"));
+	}
+
+	private CompletableFuture<Message> send(final Message message, final Mqtt5Publish publish) {
+		final CompletableFuture<Message> resultFuture = new CompletableFuture<>();
+		// @formatter:off
+		messagingClient.client.publish(publish)
+		                      .whenComplete((result, throwable) -> {
+		                          if (throwable != null) {
+		                        	  resultFuture.completeExceptionally(throwable);
+		                              logger.error("Error occurred while publishing message", throwable);
+		                          } else if (isPublishSuccessful(result)) {
+		                        	  resultFuture.complete(message);
+		                        	  logger.trace("New publish request for '{}' has been processed successfully", publish.getTopic());
+		                          } else {
+		                        	  final Throwable t = result.getError().get();
+		                        	  resultFuture.completeExceptionally(t);
+		                        	  logger.error("New publish request for '{}' failed - {}", publish.getTopic(), t);
+		                          }
+		                      });
+		// @formatter:on
+		return resultFuture;
+	}
+
+	/**
+	 * Converts the message to a publish request
+	 *
+	 * @return the publish request or {@code null} if the message has been
+	 *         consumed as a LWT update request
+	 */
+	private Mqtt5Publish toPublish(final Message message, final MessageContext context, String channel) {
+		// add topic prefix if available
+		final String prefix = messagingClient.config.topicPrefix();
+		channel = addTopicPrefix(channel, prefix);
+
+		final Map<String, Object> extensions = context.getExtensions();
 
-            // check if it is a LWT publish request
-            final boolean isLwtPublishReq = extensions.containsKey(EXTENSION_LAST_WILL);
-            if (isLwtPublishReq) {
-                final MqttWillPublish will =
-                        MessageHelper.toLWT(
-                                            channel,
-                                            content,
-                                            qos,
-                                            retain,
-                                            messageExpiryInterval,
-                                            contentEncoding,
-                                            contentType,
-                                            replyToChannel,
-                                            correlationId,
-                                            userProperties,
-                                            lastWillDelayInterval);
-                messagingClient.updateLWT(will);
-                logger.info("New publish request to udpate LWT has been sent successfully - '{}'", will);
-                return;
+		final String contentType = context.getContentType();
+		final String replyToChannel = context.getReplyToChannel();
+		final String correlationId = getCorrelationId((MessageContextProvider) context);
+		final ByteBuffer content = message.payload();
+
+		final Object messageExpiry = extensions.getOrDefault(MESSAGE_EXPIRY_INTERVAL, null);
+		final Long messageExpiryInterval = adaptTo(messageExpiry, Long.class, converter);
+
+		final int qos = getQoS(extensions, converter);
+
+		final Object isRetain = extensions.getOrDefault(RETAIN, false);
+		final boolean retain = adaptTo(isRetain, boolean.class, converter);
+
+		final String contentEncoding = context.getContentEncoding();
+
+		Mqtt5PayloadFormatIndicator payloadFormat = null;
+		if ("UTF-8".equalsIgnoreCase(contentEncoding)) {
+			payloadFormat = UTF_8;
+		}
+
+		// @formatter:off
+        final Object userProp = extensions.getOrDefault(USER_PROPERTIES, emptyMap());
+        final Map<String, String> userProperties =
+                adapt(
+                        userProp,
+                        new TypeReference<Map<String, String>>() {},
+                        converter);
+
+        // check if it is a LWT publish request
+        final boolean isLwtPublishReq = extensions.containsKey(EXTENSION_LAST_WILL);
+        if (isLwtPublishReq) {
+            final Object lastWillDelay = extensions.getOrDefault(LAST_WILL_DELAY_INTERVAL, 0L);
+            final long lastWillDelayInterval = adaptTo(lastWillDelay, long.class, converter);
+
+            final MqttWillPublish will =
+                    MessageHelper.toLWT(
+                                        channel,
+                                        content,
+                                        qos,
+                                        retain,
+                                        messageExpiryInterval,
+                                        contentEncoding,
+                                        contentType,
+                                        replyToChannel,
+                                        correlationId,
+                                        userProperties,
+                                        lastWillDelayInterval);
+            messagingClient.updateLWT(will);
+            logger.info("New publish request to udpate LWT has been sent successfully - '{}'", will);
+            return null;
+        }
+
+        final Mqtt5UserPropertiesBuilder propsBuilder = Mqtt5UserProperties.builder();
+        userProperties.forEach(propsBuilder::add);
+
+        ByteBuffer payload = content;
+        final Algorithm compression = getCompression(extensions);
+        // an already announced content encoding means that the payload is compressed already
+        if (compression != NONE && !userProperties.containsKey(CONTENT_ENCODING)
+                && content.remaining() >= config.compressionThresholdInBytes()) {
+            final byte[] data = new byte[content.remaining()];
+            content.duplicate().get(data);
+            final byte[] compressed = PayloadCodec.compress(data, compression);
+            if (compressed.length < data.length) {
+                payload = ByteBuffer.wrap(compressed);
+                propsBuilder.add(CONTENT_ENCODING, compression.encoding());
             }
-            final CompletableFuture<Void> resultFuture = new CompletableFuture<>();
-            publishRequest.send()
-                          .whenComplete((result, throwable) -> {
-                              if (throwable != null) {
-                            	  resultFuture.completeExceptionally(throwable);
-                                  logger.error("Error occurred while publishing message", throwable);
-                              } else if (isPublishSuccessful(result)) {
-                            	  resultFuture.complete(null);
-							      logger.trace("New publish request for '{}' has been processed successfully", ch);
-							  } else {
-								  final Throwable t = result.getError().get();
-								  resultFuture.completeExceptionally(t);
-								  logger.error("New publish request for '{}' failed - {}", ch, t);
-							  }
-                          });
-            resultFuture.get(config.timeoutInMillis(), MILLISECONDS);
-            // @formatter:on
-		} catch (final ExecutionException e) {
-			logger.error("Error while publishing data to {}", channel, e);
-			throw new RuntimeException(e.getCause());
-		} catch (final Exception e) {
-			logger.error("Error while publishing data to {}", channel, e);
-			throw new RuntimeException(e);
+        }
+
+        final Mqtt5PublishBuilder.Complete publishRequest =
+                Mqtt5Publish.builder()
+                                .topic(channel)
+                                .payloadFormatIndicator(payloadFormat)
+                                .contentType(contentType)
+                                .payload(payload)
+                                .qos(MqttQos.fromCode(qos))
+                                .retain(retain)
+                                .responseTopic(replyToChannel)
+                                .correlationData(correlationId.getBytes())
+                                .userProperties(propsBuilder.build());
+
+        if (messageExpiryInterval == null || messageExpiryInterval == 0) {
+            publishRequest.noMessageExpiry();
+        } else {
+            publishRequest.messageExpiryInterval(messageExpiryInterval);
+        }
+        topicAliasStatistics.record(channel);
+        return publishRequest.build();
+        // @formatter:on
+	}
+
+	private Algorithm getCompression(final Map<String, Object> extensions) {
+		final Object compression = extensions.get(COMPRESSION);
+		if (compression == null) {
+			return config.compression();
 		}
+		final Algorithm algorithm = Algorithm.of(adaptTo(compression, String.class, converter));
+		if (algorithm == null) {
+			throw new IllegalArgumentException("Unsupported compression algorithm '" + compression + "'");
+		}
+		return algorithm;
 	}
 
 	private boolean isPublishSuccessful(final Mqtt5PublishResult result) {
 		return !result.getError().isPresent();
 	}
 
+	private static final class ConflationSlot {
+
+		final String channel;
+
+		/** guarded by this */
+		boolean isInFlight;
+
+		/** guarded by this */
+		PendingPublish latest;
+
+		/** guarded by this ({@code true} once the slot has been removed from the table) */
+		boolean isRetired;
+
+		ConflationSlot(final String channel) {
+			this.channel = channel;
+		}
+	}
+
+	private static final class PendingPublish {
+
+		final Message message;
+		final Mqtt5Publish publish;
+		final CompletableFuture<Message> result = new CompletableFuture<>();
+
+		PendingPublish(final Message message, final Mqtt5Publish publish) {
+			this.message = message;
+			this.publish = publish;
+		}
+	}
+
 }
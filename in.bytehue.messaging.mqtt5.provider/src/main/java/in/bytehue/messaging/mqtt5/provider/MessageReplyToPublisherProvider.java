@@ -18,20 +18,27 @@ package in.bytehue.messaging.mqtt5.provider;
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.MESSAGING_ID;
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.MESSAGING_PROTOCOL;
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.ConfigurationPid.PUBLISHER_REPLYTO;
-import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.getCorrelationId;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.REPLY_TO_TIMEOUT;
+import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.adaptTo;
 import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.osgi.service.messaging.Features.GENERATE_CORRELATION_ID;
 import static org.osgi.service.messaging.Features.GENERATE_REPLY_CHANNEL;
 import static org.osgi.service.messaging.Features.REPLY_TO;
 import static org.osgi.service.messaging.Features.REPLY_TO_MANY_PUBLISH;
 import static org.osgi.service.messaging.Features.REPLY_TO_MANY_SUBSCRIBE;
 
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.osgi.framework.BundleContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.log.Logger;
 import org.osgi.service.log.LoggerFactory;
@@ -51,6 +58,9 @@ import org.osgi.util.pushstream.PushStream;
 
 import in.bytehue.messaging.mqtt5.provider.MessageReplyToPublisherProvider.Config;
 import in.bytehue.messaging.mqtt5.provider.helper.ThreadFactoryBuilder;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
 
 //@formatter:off
 @Designate(ocd = Config.class)
@@ -84,6 +94,15 @@ public final class MessageReplyToPublisherProvider implements ReplyToPublisher,
 
         @AttributeDefinition(name = "Flag to set if the threads will be daemon threads")
         boolean isDaemon() default true;
+
+        @AttributeDefinition(name = "Default time to wait for a reply in milliseconds (0 to wait infinitely)")
+        long replyTimeoutInMillis() default 30_000L;
+
+        @AttributeDefinition(name = "Tick duration of the timer wheel tracking the reply deadlines in milliseconds")
+        long timeoutTickInMillis() default 100L;
+
+        @AttributeDefinition(name = "Flag to run every task on a new virtual thread instead of the thread pool (Java 21+)")
+        boolean useVirtualThreads() default false;
     }
     //@formatter:on
 
@@ -96,24 +115,63 @@ public final class MessageReplyToPublisherProvider implements ReplyToPublisher,
 	@Reference
 	private MessageSubscriptionProvider subscriber;
 
-	@Activate
-	private BundleContext bundleContext;
+	@Reference
+	private MessageClientProvider messagingClient;
+
+	@Reference
+	private ConverterAdapter converter;
 
+	private final Config config;
 	private final PromiseFactory promiseFactory;
 
+	/** single timer tracking the deadlines of all outstanding requests */
+	private final Timer timeoutTimer;
+
+	/** the pending requests waiting for a reply on the shared inbox */
+	private final Map<String, Deferred<Message>> pendingReplies = new ConcurrentHashMap<>();
+
+	/** the long-lived subscription of the shared reply inbox (created lazily) */
+	private volatile PushStream<Message> replyInbox;
+	private volatile String replyInboxChannel;
+
 	@Activate
 	public MessageReplyToPublisherProvider(final Config config) {
+		this.config = config;
 		//@formatter:off
+        final boolean isVirtual = config.useVirtualThreads() && ThreadFactoryBuilder.isVirtualThreadSupported();
         final ThreadFactory threadFactory =
                 new ThreadFactoryBuilder()
                         .setThreadFactoryName(config.threadNamePrefix())
                         .setThreadNameFormat(config.threadNameSuffix())
                         .setDaemon(config.isDaemon())
+                        .setVirtual(isVirtual)
+                        .build();
+        // virtual threads are cheap enough to block in the callbacks, hence they are not pooled
+        final Executor executor = isVirtual
+                ? ThreadFactoryBuilder.newThreadPerTaskExecutor(threadFactory)
+                : newFixedThreadPool(config.numThreads(), threadFactory);
+        promiseFactory = new PromiseFactory(executor);
+
+        final ThreadFactory timerThreadFactory =
+                new ThreadFactoryBuilder()
+                        .setThreadFactoryName(config.threadNamePrefix())
+                        .setThreadNameFormat("-timer-%d")
+                        .setDaemon(true)
                         .build();
-        promiseFactory = new PromiseFactory(newFixedThreadPool(config.numThreads(), threadFactory));
+        timeoutTimer = new HashedWheelTimer(timerThreadFactory, config.timeoutTickInMillis(), MILLISECONDS);
         //@formatter:on
 	}
 
+	@Deactivate
+	void deactivate() {
+		final PushStream<Message> inbox = replyInbox;
+		if (inbox != null) {
+			inbox.close();
+		}
+		failPendingReplies("Reply-to publisher has been deactivated");
+		timeoutTimer.stop();
+	}
+
 	@Override
 	public Promise<Message> publishWithReply(final Message requestMessage) {
 		return publishWithReply(requestMessage, requestMessage.getContext());
@@ -121,6 +179,10 @@ public final class MessageReplyToPublisherProvider implements ReplyToPublisher,
 
 	@Override
 	public Promise<Message> publishWithReply(final Message requestMessage, final MessageContext replyToContext) {
+		// requests without an explicit reply-to channel are served by the shared inbox
+		if (requestMessage.getContext().getReplyToChannel() == null && replyToContext.getReplyToChannel() == null) {
+			return publishWithSharedInbox(requestMessage, replyToContext);
+		}
 		final Deferred<Message> deferred = promiseFactory.deferred();
 		final ReplyToDTO dto = new ReplyToDTO(requestMessage, replyToContext);
 
@@ -128,17 +190,172 @@ public final class MessageReplyToPublisherProvider implements ReplyToPublisher,
 		final PushStream<Message> stream = subscriber.replyToSubscribe(dto.subChannel, dto.pubChannel).stream()
 				.filter(responseMessage -> matchCorrelationId(requestMessage, responseMessage)).buffer();
 
+		// the first reply and the deadline race each other and only the first of
+		// them settles the promise
+		final AtomicBoolean isSettled = new AtomicBoolean();
+
 		// resolve the promise on first response matching the specified correlation ID
 		// and close the stream to proceed with the unsubscription as it is a fire and
 		// forget execution
 		stream.forEach(m -> {
-			deferred.resolve(m);
+			if (isSettled.compareAndSet(false, true)) {
+				deferred.resolve(m);
+			}
+			stream.close();
+		});
+
+		// free the subscription if no reply arrives in time
+		final long timeoutInMillis = getReplyTimeout(requestMessage, replyToContext, config.replyTimeoutInMillis());
+		final Timeout timeout = scheduleTimeout(timeoutInMillis, dto.subChannel, () -> {
+			if (isSettled.compareAndSet(false, true)) {
+				deferred.fail(newTimeoutException(dto.subChannel));
+			}
 			stream.close();
 		});
+		final Promise<Message> promise = deferred.getPromise();
+		if (timeout != null) {
+			promise.onResolve(timeout::cancel);
+		}
 
 		// publish the request to the channel
 		publisher.publish(requestMessage, dto.pubChannel);
-		return deferred.getPromise();
+		return promise;
+	}
+
+	private Promise<Message> publishWithSharedInbox(final Message requestMessage, final MessageContext replyToContext) {
+		final Deferred<Message> deferred = promiseFactory.deferred();
+		// the request is published with its own context such that the context of the
+		// caller's message remains untouched
+		final MessageContextProvider context = copyOf(requestMessage.getContext());
+		context.channel = replyToContext.getChannel();
+		context.correlationId = publisher.getCorrelationId(context);
+		context.replyToChannel = acquireReplyInbox();
+
+		final String correlationId = context.correlationId;
+		final Promise<Message> promise = deferred.getPromise();
+		if (pendingReplies.putIfAbsent(correlationId, deferred) != null) {
+			deferred.fail(new IllegalStateException(
+					"Another request with the correlation ID '" + correlationId + "' is already pending"));
+			return promise;
+		}
+		// free the correlation entry if no reply arrives in time
+		final long timeoutInMillis = getReplyTimeout(requestMessage, replyToContext, config.replyTimeoutInMillis());
+		final Timeout timeout = scheduleTimeout(timeoutInMillis, context.replyToChannel, () -> {
+			if (pendingReplies.remove(correlationId, deferred)) {
+				deferred.fail(newTimeoutException(context.replyToChannel));
+			}
+		});
+		if (timeout != null) {
+			promise.onResolve(timeout::cancel);
+		}
+		try {
+			publisher.publish(requestMessage, context);
+		} catch (final Exception e) {
+			pendingReplies.remove(correlationId, deferred);
+			deferred.fail(e);
+		}
+		return promise;
+	}
+
+	private static MessageContextProvider copyOf(final MessageContext context) {
+		final MessageContextProvider copy = new MessageContextProvider();
+		copy.channel = context.getChannel();
+		copy.contentType = context.getContentType();
+		copy.contentEncoding = context.getContentEncoding();
+		copy.correlationId = context.getCorrelationId();
+		copy.replyToChannel = context.getReplyToChannel();
+		if (context instanceof MessageContextProvider) {
+			copy.correlationIdGenerator = ((MessageContextProvider) context).correlationIdGenerator;
+		}
+		if (context.getExtensions() != null) {
+			copy.extensions.putAll(context.getExtensions());
+		}
+		return copy;
+	}
+
+	private Timeout scheduleTimeout(final long timeoutInMillis, final String replyChannel, final Runnable onTimeout) {
+		if (timeoutInMillis <= 0) {
+			return null;
+		}
+		return timeoutTimer.newTimeout(t -> {
+			logger.debug("No reply received on '{}' within {} ms", replyChannel, timeoutInMillis);
+			onTimeout.run();
+		}, timeoutInMillis, MILLISECONDS);
+	}
+
+	/**
+	 * Returns the reply timeout specified in the reply-to context or the request
+	 * message or the specified default timeout if none is specified
+	 */
+	private long getReplyTimeout(final Message requestMessage, final MessageContext replyToContext,
+			final long defaultTimeoutInMillis) {
+		Object timeout = null;
+		if (replyToContext.getExtensions() != null) {
+			timeout = replyToContext.getExtensions().get(REPLY_TO_TIMEOUT);
+		}
+		if (timeout == null && requestMessage.getContext().getExtensions() != null) {
+			timeout = requestMessage.getContext().getExtensions().get(REPLY_TO_TIMEOUT);
+		}
+		if (timeout == null) {
+			return defaultTimeoutInMillis;
+		}
+		return adaptTo(timeout, long.class, converter);
+	}
+
+	private TimeoutException newTimeoutException(final String replyChannel) {
+		return new TimeoutException("No reply has been received on '" + replyChannel + "' in time");
+	}
+
+	private String acquireReplyInbox() {
+		if (replyInbox == null) {
+			synchronized (this) {
+				if (replyInbox == null) {
+					final String channel = "reply/" + getClientId();
+					final PushStream<Message> stream = subscriber.replyToSubscribe(channel, null).stream();
+					stream.onClose(() -> {
+						replyInbox = null;
+						failPendingReplies("Reply inbox '" + channel + "' has been closed");
+					});
+					stream.forEach(this::dispatchReply);
+					replyInboxChannel = channel;
+					replyInbox = stream;
+					logger.debug("Shared reply inbox '{}' has been subscribed", channel);
+				}
+			}
+		}
+		return replyInboxChannel;
+	}
+
+	private void dispatchReply(final Message responseMessage) {
+		final String correlationId = responseMessage.getContext().getCorrelationId();
+		if (correlationId == null) {
+			logger.warn("Dropping reply on the shared inbox since it does not have any correlation ID");
+			return;
+		}
+		final Deferred<Message> deferred = pendingReplies.remove(correlationId);
+		if (deferred == null) {
+			logger.debug("Dropping reply with correlation ID '{}' since no request is pending", correlationId);
+			return;
+		}
+		deferred.resolve(responseMessage);
+	}
+
+	private void failPendingReplies(final String reason) {
+		pendingReplies.keySet().forEach(correlationId -> {
+			final Deferred<Message> deferred = pendingReplies.remove(correlationId);
+			if (deferred != null) {
+				deferred.fail(new IllegalStateException(reason));
+			}
+		});
+	}
+
+	private String getClientId() {
+		// @formatter:off
+		return messagingClient.client.getConfig()
+		                             .getClientIdentifier()
+		                             .map(Object::toString)
+		                             .orElseGet(() -> UUID.randomUUID().toString());
+		// @formatter:on
 	}
 
 	@Override
@@ -154,6 +371,15 @@ public final class MessageReplyToPublisherProvider implements ReplyToPublisher,
 		final PushStream<Message> stream = subscriber.replyToSubscribe(dto.subChannel, dto.pubChannel).stream()
 				.filter(responseMessage -> matchCorrelationId(requestMessage, responseMessage));
 
+		// close the stream of replies once the deadline has elapsed which is only
+		// applied if it is explicitly specified as a reply-to-many request is
+		// expected to receive replies until the caller closes the stream
+		final long timeoutInMillis = getReplyTimeout(requestMessage, replyToContext, 0L);
+		final Timeout timeout = scheduleTimeout(timeoutInMillis, dto.subChannel, stream::close);
+		if (timeout != null) {
+			stream.onClose(timeout::cancel);
+		}
+
 		// publish the request to the channel
 		publisher.publish(requestMessage, dto.pubChannel);
 		return stream;
@@ -173,7 +399,7 @@ public final class MessageReplyToPublisherProvider implements ReplyToPublisher,
 
 		private void autoGenerateCorrelationIdIfAbsent(final Message message) {
 			final MessageContextProvider context = (MessageContextProvider) message.getContext();
-			context.correlationId = getCorrelationId(context, bundleContext, logger);
+			context.correlationId = publisher.getCorrelationId(context);
 		}
 
 		private void autoGenerateReplyToChannelIfAbsent(final Message message) {
@@ -17,6 +17,7 @@ package in.bytehue.messaging.mqtt5.provider;
 
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.MESSAGING_ID;
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.MESSAGING_PROTOCOL;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.REPLY_TO_SUBSCRIPTION_SHARE_GROUP_PROPERTY;
 import static in.bytehue.messaging.mqtt5.provider.MessageReplyToWhiteboardProvider.PID;
 import static in.bytehue.messaging.mqtt5.provider.MessageReplyToWhiteboardProvider.ReplyToSubDTO.Type.REPLY_TO_MANY_SUB;
 import static in.bytehue.messaging.mqtt5.provider.MessageReplyToWhiteboardProvider.ReplyToSubDTO.Type.REPLY_TO_SINGLE_SUB;
@@ -37,11 +38,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.stream.Stream;
 
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
-import org.osgi.service.component.ComponentServiceObjects;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
@@ -89,9 +88,6 @@ public final class MessageReplyToWhiteboardProvider {
 	@Reference
 	private MessageSubscriptionRegistry registry;
 
-	@Reference
-	private ComponentServiceObjects<MessageContextBuilderProvider> mcbFactory;
-
 	private Config config;
 	private final List<ReplyToSubDTO> subscriptions = new CopyOnWriteArrayList<>();
 
@@ -204,7 +200,7 @@ public final class MessageReplyToWhiteboardProvider {
 
 	@Deactivate
 	void deactivate() {
-		subscriptions.stream().forEach(sub -> sub.subAcks.stream().forEach(s -> s.stream().close()));
+		subscriptions.stream().forEach(this::unsubscribe);
 		subscriptions.clear();
 
 		tracker1.close();
@@ -220,20 +216,18 @@ public final class MessageReplyToWhiteboardProvider {
 	private void processReplyToSingleSubscriptionHandler(final ReplyToSubDTO sub) {
 		final ReplyToDTO replyToDTO = new ReplyToDTO(sub.reference);
 
-		Stream.of(replyToDTO.subChannels).forEach(c -> {
-			final SubscriptionAck ack = subscriber.replyToSubscribe(c, replyToDTO.pubChannel);
+		subscribe(replyToDTO).forEach(ack -> {
 			sub.addAck(ack);
 
 			ack.stream().map(m -> handleResponse(m, (ReplyToSingleSubscriptionHandler) sub.handler))
-					.forEach(m -> handleMessageReceive(sub.reference, replyToDTO, c, ack, m));
+					.forEach(m -> handleMessageReceive(sub.reference, replyToDTO, ack, m));
 		});
 	}
 
 	private void processReplyToSubscriptionHandler(final ReplyToSubDTO sub) {
 		final ReplyToDTO replyToDTO = new ReplyToDTO(sub.reference);
 
-		Stream.of(replyToDTO.subChannels).forEach(c -> {
-			final SubscriptionAck ack = subscriber.replyToSubscribe(c, replyToDTO.pubChannel);
+		subscribe(replyToDTO).forEach(ack -> {
 			sub.addAck(ack);
 
 			ack.stream().forEach(((ReplyToSubscriptionHandler) sub.handler)::handleResponse);
@@ -243,23 +237,27 @@ public final class MessageReplyToWhiteboardProvider {
 	private void processReplyToManySubscriptionHandler(final ReplyToSubDTO sub) {
 		final ReplyToDTO replyToDTO = new ReplyToDTO(sub.reference);
 
-		Stream.of(replyToDTO.subChannels).forEach(c -> {
-			final SubscriptionAck ack = subscriber.replyToSubscribe(c, replyToDTO.pubChannel);
+		subscribe(replyToDTO).forEach(ack -> {
 			sub.addAck(ack);
 
 			ack.stream().forEach(m -> handleResponses(m, (ReplyToManySubscriptionHandler) sub.handler)
-					.forEach(msg -> handleMessageReceive(sub.reference, replyToDTO, c, ack, msg)));
+					.forEach(msg -> handleMessageReceive(sub.reference, replyToDTO, ack, msg)));
 		});
 	}
 
+	/**
+	 * Subscribes to all request channels of the handler using a single SUBSCRIBE
+	 */
+	private List<SubscriptionAck> subscribe(final ReplyToDTO replyToDTO) {
+		return subscriber.replyToSubscribeAll(replyToDTO.subChannels, replyToDTO.pubChannel, replyToDTO.shareGroup);
+	}
+
 	private Message handleResponse(final Message request, final ReplyToSingleSubscriptionHandler handler) {
 		final MessageContextBuilderProvider mcb = getResponse(request);
 		try {
 			return handler.handleResponse(request, mcb);
 		} catch (final Exception e) {
 			return prepareExceptionAsMessage(e, mcb);
-		} finally {
-			mcbFactory.ungetService(mcb);
 		}
 	}
 
@@ -269,8 +267,10 @@ public final class MessageReplyToWhiteboardProvider {
 		final String replyToChannel = context.getReplyToChannel();
 		final String correlation = context.getCorrelationId();
 
-		return (MessageContextBuilderProvider) mcbFactory.getService().channel(channel).replyTo(replyToChannel)
-				.correlationId(correlation).content(request.payload());
+		// the builder is instantiated directly as the receive path must not acquire a
+		// prototype scoped builder service for every received request
+		return (MessageContextBuilderProvider) new MessageContextBuilderProvider(logger).channel(channel)
+				.replyTo(replyToChannel).correlationId(correlation).content(request.payload());
 	}
 
 	private PushStream<Message> handleResponses(final Message request, final ReplyToManySubscriptionHandler handler) {
@@ -279,7 +279,7 @@ public final class MessageReplyToWhiteboardProvider {
 	}
 
 	private void handleMessageReceive(final ServiceReference<?> reference, final ReplyToDTO replyToDTO,
-			final String channel, final SubscriptionAck sub, final Message msg) {
+			final SubscriptionAck sub, final Message msg) {
 
 		final String pubChannelProp = replyToDTO.pubChannel;
 		final String pubChannel = pubChannelProp == null || pubChannelProp.isEmpty()
@@ -292,7 +292,7 @@ public final class MessageReplyToWhiteboardProvider {
 		}
 		if (config.storeReplyToChannelInfoIfReceivedInMessage()) {
 			// update the subscription
-			final ExtendedSubscription subscription = registry.getSubscription(channel, sub.id());
+			final ExtendedSubscription subscription = registry.getSubscription(sub.channel(), sub.id());
 			subscription.updateReplyToHandlerSubscription(pubChannel, reference);
 		}
 		publisher.publish(msg, pubChannel);
@@ -303,6 +303,7 @@ public final class MessageReplyToWhiteboardProvider {
 		boolean isConform;
 		String pubChannel;
 		String[] subChannels;
+		String shareGroup;
 
 		ReplyToDTO(final ServiceReference<?> reference) {
 			final Dictionary<String, ?> properties = reference.getProperties();
@@ -318,6 +319,10 @@ public final class MessageReplyToWhiteboardProvider {
 						+ "' handler instance doesn't specify the reply-to subscription channel(s)");
 			}
 
+			// the handler can join a shared subscription group to distribute the requests
+			final Object replyToSubShareGroup = properties.get(REPLY_TO_SUBSCRIPTION_SHARE_GROUP_PROPERTY);
+			shareGroup = adaptTo(replyToSubShareGroup, String.class, converter);
+
 			final Object replyToSubTgt = properties.get(REPLY_TO_SUBSCRIPTION_TARGET_PROPERTY);
 			final String replyToSubTarget = adaptTo(replyToSubTgt, String.class, converter);
 
@@ -367,9 +372,17 @@ public final class MessageReplyToWhiteboardProvider {
 	}
 
 	private synchronized void removeSubscription(final ServiceReference<?> reference) {
-		subscriptions.stream().filter(sub -> sub.reference == reference)
-				.forEach(sub -> sub.subAcks.stream().forEach(s -> s.stream().close()));
+		subscriptions.stream().filter(sub -> sub.reference == reference).forEach(this::unsubscribe);
 		subscriptions.removeIf(sub -> sub.reference == reference);
 	}
 
+	/**
+	 * Unsubscribes from all request channels of the handler using a single
+	 * UNSUBSCRIBE before the streams get closed
+	 */
+	private void unsubscribe(final ReplyToSubDTO sub) {
+		registry.removeSubscriptions(sub.subAcks);
+		sub.subAcks.stream().forEach(s -> s.stream().close());
+	}
+
 }
@@ -15,6 +15,7 @@
  ******************************************************************************/
 package in.bytehue.messaging.mqtt5.provider;
 
+import static com.hivemq.client.mqtt.MqttGlobalPublishFilter.SUBSCRIBED;
 import static com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish.DEFAULT_QOS;
 import static com.hivemq.client.mqtt.mqtt5.message.subscribe.suback.Mqtt5SubAckReasonCode.GRANTED_QOS_0;
 import static com.hivemq.client.mqtt.mqtt5.message.subscribe.suback.Mqtt5SubAckReasonCode.GRANTED_QOS_1;
@@ -22,26 +23,48 @@ import static com.hivemq.client.mqtt.mqtt5.message.subscribe.suback.Mqtt5SubAckR
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.MESSAGING_ID;
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.MESSAGING_PROTOCOL;
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.ConfigurationPid.SUBSCRIBER;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.CHUNKED;
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.RECEIVE_LOCAL;
 import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.RETAIN;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.SHARE_GROUP;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.USER_PROPERTIES;
 import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.acknowledgeMessage;
 import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.adaptTo;
 import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.addTopicPrefix;
 import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.getQoS;
 import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.toMessage;
+import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.toSharedSubscription;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.toList;
 import static org.osgi.service.messaging.Features.ACKNOWLEDGE;
 import static org.osgi.service.messaging.Features.EXTENSION_QOS;
+import static org.osgi.service.messaging.acknowledge.AcknowledgeType.REJECTED;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.osgi.framework.BundleContext;
-import org.osgi.service.component.ComponentServiceObjects;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
@@ -52,17 +75,34 @@ import org.osgi.service.messaging.Message;
 import org.osgi.service.messaging.MessageContext;
 import org.osgi.service.messaging.MessageSubscription;
 import org.osgi.service.messaging.propertytypes.MessagingFeature;
+import org.osgi.util.promise.Deferred;
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.PromiseFactory;
+import org.osgi.util.pushstream.PushEvent;
 import org.osgi.util.pushstream.PushStream;
+import org.osgi.util.pushstream.PushStreamBuilder;
 import org.osgi.util.pushstream.PushStreamProvider;
 import org.osgi.util.pushstream.SimplePushEventSource;
 
 import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
+import com.hivemq.client.mqtt.mqtt5.exceptions.Mqtt5SubAckException;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.client.mqtt.mqtt5.message.subscribe.Mqtt5Subscribe;
+import com.hivemq.client.mqtt.mqtt5.message.subscribe.Mqtt5Subscription;
 import com.hivemq.client.mqtt.mqtt5.message.subscribe.suback.Mqtt5SubAck;
 import com.hivemq.client.mqtt.mqtt5.message.subscribe.suback.Mqtt5SubAckReasonCode;
 
+import in.bytehue.messaging.mqtt5.api.MqttMessageSubscription;
+import in.bytehue.messaging.mqtt5.api.MqttSubscriptionException;
 import in.bytehue.messaging.mqtt5.provider.MessageSubscriptionRegistry.ExtendedSubscription;
+import in.bytehue.messaging.mqtt5.provider.helper.ChunkAssembler;
 import in.bytehue.messaging.mqtt5.provider.helper.InterruptSafe;
+import in.bytehue.messaging.mqtt5.provider.helper.PartitionedPushEventSource;
+import in.bytehue.messaging.mqtt5.provider.helper.PayloadCodec;
+import in.bytehue.messaging.mqtt5.provider.helper.StreamOptions;
 import in.bytehue.messaging.mqtt5.provider.helper.SubscriptionAck;
+import in.bytehue.messaging.mqtt5.provider.helper.ThreadFactoryBuilder;
 
 //@formatter:off
 @MessagingFeature(
@@ -71,20 +111,35 @@ import in.bytehue.messaging.mqtt5.provider.helper.SubscriptionAck;
         feature = {
                     EXTENSION_QOS,
                     RETAIN,
+                    CHUNKED,
+                    SHARE_GROUP,
                     ACKNOWLEDGE,
                     RECEIVE_LOCAL
                   }
 )
 @Component(service = {
                        MessageSubscription.class,
+                       MqttMessageSubscription.class,
                        MessageSubscriptionProvider.class
                      },
            configurationPid = SUBSCRIBER
 )
-public final class MessageSubscriptionProvider implements MessageSubscription {
+public final class MessageSubscriptionProvider implements MqttMessageSubscription {
 
 	@interface AwaitConfig {
 		long timeoutInMillis() default 30_000L;
+
+		long maxChunkedMessageSizeInBytes() default 16_777_216L;
+
+		long chunkBufferSizeInBytes() default 67_108_864L;
+
+		long chunkTimeoutInMillis() default 60_000L;
+
+		long maxDecompressedSizeInBytes() default PayloadCodec.DEFAULT_MAX_DECOMPRESSED_SIZE;
+
+		boolean useVirtualThreads() default false;
+
+		boolean manualAcknowledgement() default false;
 	}
 
 	@Activate
@@ -105,12 +160,89 @@ public final class MessageSubscriptionProvider implements MessageSubscription {
     @Reference
     private MessageSubscriptionRegistry subscriptionRegistry;
 
-    @Reference
-    private ComponentServiceObjects<MessageContextBuilderProvider> mcbFactory;
+    private volatile boolean isActive;
+    private ChunkAssembler chunkAssembler;
+
+    /** discards the incomplete chunked transfers that have timed out */
+    private ScheduledExecutorService chunkExpiryExecutor;
+    private final PromiseFactory promiseFactory = new PromiseFactory(null);
+
+    /** acknowledges the received messages to the broker only once they have been consumed */
+    private boolean isManualAcknowledgement;
+
+    /** delivers the messages to the streams without an executor ({@code null} to use the defaults) */
+    private Executor streamExecutor;
+
+    /** drains the lanes of all partitioned subscriptions without an executor (created on first use) */
+    private ExecutorService partitionExecutor;
+    private final Consumer<Mqtt5AsyncClient> clientListener = this::registerGlobalPublishFlow;
+    private final Runnable connectedListener = this::onConnected;
+
+    /** the client instance of the latest connection ({@code null} if not yet connected) */
+    private volatile Mqtt5AsyncClient connectedClient;
+
+    @Activate
+    void start() {
+        chunkAssembler = new ChunkAssembler(
+                                config.maxChunkedMessageSizeInBytes(),
+                                config.chunkBufferSizeInBytes(),
+                                config.chunkTimeoutInMillis());
+        // @formatter:off
+        final ThreadFactory chunkExpiryThreadFactory =
+                new ThreadFactoryBuilder()
+                        .setThreadFactoryName("mqtt-chunk-expiry")
+                        .setThreadNameFormat("-%d")
+                        .setDaemon(true)
+                        .build();
+        // @formatter:on
+        final long chunkTimeout = config.chunkTimeoutInMillis();
+        chunkExpiryExecutor = newSingleThreadScheduledExecutor(chunkExpiryThreadFactory);
+        chunkExpiryExecutor.scheduleWithFixedDelay(this::expireChunkedTransfers, chunkTimeout, chunkTimeout, MILLISECONDS);
+        if (config.useVirtualThreads()) {
+            if (ThreadFactoryBuilder.isVirtualThreadSupported()) {
+                // @formatter:off
+                final ThreadFactory threadFactory =
+                        new ThreadFactoryBuilder()
+                                .setThreadFactoryName("mqtt-subscription")
+                                .setThreadNameFormat("-%d")
+                                .setVirtual(true)
+                                .build();
+                // @formatter:on
+                streamExecutor = ThreadFactoryBuilder.newThreadPerTaskExecutor(threadFactory);
+            } else {
+                logger.warn("Virtual threads are not supported by the runtime - the default executors are used instead");
+            }
+        }
+        isManualAcknowledgement = config.manualAcknowledgement();
+        isActive = true;
+        final Mqtt5AsyncClient client = messagingClient.client;
+        if (client != null && client.getState().isConnected()) {
+            connectedClient = client;
+        }
+        messagingClient.addClientListener(clientListener);
+        messagingClient.addConnectedListener(connectedListener);
+    }
 
     @Deactivate
     void stop() {
+        isActive = false;
+        messagingClient.removeClientListener(clientListener);
+        messagingClient.removeConnectedListener(connectedListener);
         subscriptionRegistry.clearAllSubscriptions();
+        chunkExpiryExecutor.shutdownNow();
+        chunkAssembler.clear();
+        synchronized (this) {
+            if (partitionExecutor != null) {
+                partitionExecutor.shutdown();
+            }
+        }
+    }
+
+    private void expireChunkedTransfers() {
+        final int expired = chunkAssembler.expire();
+        if (expired > 0) {
+            logger.warn("{} incomplete chunked transfers have been discarded after {} ms", expired, config.chunkTimeoutInMillis());
+        }
     }
 
     @Override
@@ -124,40 +256,200 @@ public final class MessageSubscriptionProvider implements MessageSubscription {
     }
 
     public SubscriptionAck _subscribe(final String subChannel) {
-    	return subscribe(null, subChannel, null, false);
+    	return subscribe(null, subChannel, null, null, false);
     }
 
     public SubscriptionAck _subscribe(final MessageContext context) {
-    	return subscribe(context, context.getChannel(), null, false);
+    	return subscribe(context, context.getChannel(), null, getShareGroup(context), false);
     }
 
     public SubscriptionAck replyToSubscribe(final String subChannel, final String pubChannel) {
-        return subscribe(null, subChannel, pubChannel, true);
+        return replyToSubscribe(subChannel, pubChannel, null);
+    }
+
+    public SubscriptionAck replyToSubscribe(final String subChannel, final String pubChannel, final String shareGroup) {
+        return subscribe(null, subChannel, pubChannel, shareGroup, true);
+    }
+
+    @Override
+    public List<PushStream<Message>> subscribeAll(final Collection<MessageContext> contexts) {
+        return _subscribeAll(contexts).stream().map(SubscriptionAck::stream).collect(toList());
+    }
+
+    @Override
+    public Promise<PushStream<Message>> subscribeAsync(final String subChannel) {
+        return subscribeAsync(null, subChannel, null);
+    }
+
+    @Override
+    public Promise<PushStream<Message>> subscribeAsync(final MessageContext context) {
+        return subscribeAsync(context, context.getChannel(), getShareGroup(context));
+    }
+
+    public List<SubscriptionAck> _subscribeAll(final Collection<MessageContext> contexts) {
+        return subscribeAll(contexts, c -> prepare(c, c.getChannel(), null, getShareGroup(c), false));
+    }
+
+    public List<SubscriptionAck> replyToSubscribeAll(final String[] subChannels, final String pubChannel, final String shareGroup) {
+        return subscribeAll(Arrays.asList(subChannels), c -> prepare(null, c, pubChannel, shareGroup, true));
     }
 
     private SubscriptionAck subscribe(
-    		                         MessageContext context,
+    		                         final MessageContext context,
     		                         final String subChannel,
     		                         final String pubChannel,
+    		                         final String shareGroup,
     		                         final boolean isReplyToSub) {
 
-        final PushStreamProvider provider = new PushStreamProvider();
-        final SimplePushEventSource<Message> source = acquirePushEventSource(provider);
-        final PushStream<Message> stream = provider.createStream(source); //NOSONAR
+        final PendingSubscription pending = prepare(context, subChannel, pubChannel, shareGroup, isReplyToSub);
+        try {
+            // the first local subscription of a topic filter subscribes to the broker and
+            // a further one with a higher QoS upgrades the broker subscription
+            final CompletableFuture<Mqtt5SubAckReasonCode> future =
+                    subscriptionRegistry.acquireBrokerSubscription(pending.brokerSubscription, this::sendSubscribe);
+            onBrokerSubscription(pending, future);
+            final Mqtt5SubAckReasonCode reasonCode = future.get(config.timeoutInMillis(), MILLISECONDS);
+            if (!isSubscriptionAcknowledged(reasonCode)) {
+                // @formatter:off
+                throw new MqttSubscriptionException(
+                                pending.channel,
+                                reasonCode.getCode(),
+                                "Subscription to '" + pending.channel + "' has been rejected - " + reasonCode);
+                // @formatter:on
+            }
+            return pending.toAck();
+        } catch (final MqttSubscriptionException e) {
+            logger.error("Error while subscribing to {}", pending.channel, e);
+            releaseSubscription(pending.channel, pending.subscription);
+            throw e;
+        } catch (final ExecutionException e) {
+            logger.error("Error while subscribing to {}", pending.channel, e);
+            releaseSubscription(pending.channel, pending.subscription);
+            throw new RuntimeException(e.getCause());
+        } catch (final Exception e) {
+            logger.error("Error while subscribing to {}", pending.channel, e);
+            releaseSubscription(pending.channel, pending.subscription);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Requests the broker subscription without waiting for the SUBACK. The local
+     * subscription is removed if the broker rejects the topic filter or if the
+     * SUBACK is not received in time.
+     */
+    private Promise<PushStream<Message>> subscribeAsync(
+                                                       final MessageContext context,
+                                                       final String subChannel,
+                                                       final String shareGroup) {
+
+        final Deferred<PushStream<Message>> deferred = promiseFactory.deferred();
+        final PendingSubscription pending;
+        try {
+            pending = prepare(context, subChannel, null, shareGroup, false);
+        } catch (final Exception e) {
+            deferred.fail(e);
+            return deferred.getPromise();
+        }
+        final Promise<PushStream<Message>> promise = deferred.getPromise().timeout(config.timeoutInMillis());
+        promise.onFailure(e -> {
+            logger.error("Error while subscribing to {}", pending.channel, e);
+            releaseSubscription(pending.channel, pending.subscription);
+        });
+        try {
+            final CompletableFuture<Mqtt5SubAckReasonCode> future =
+                    subscriptionRegistry.acquireBrokerSubscription(pending.brokerSubscription, this::sendSubscribe);
+            onBrokerSubscription(pending, future);
+            future.whenComplete((reasonCode, t) -> {
+                if (t != null) {
+                    deferred.fail(t instanceof CompletionException ? t.getCause() : t);
+                } else if (!isSubscriptionAcknowledged(reasonCode)) {
+                    // @formatter:off
+                    deferred.fail(new MqttSubscriptionException(
+                                        pending.channel,
+                                        reasonCode.getCode(),
+                                        "Subscription to '" + pending.channel + "' has been rejected - " + reasonCode));
+                    // @formatter:on
+                } else {
+                    deferred.resolve(pending.stream);
+                }
+            });
+        } catch (final Exception e) {
+            deferred.fail(e);
+        }
+        return promise;
+    }
+
+    /**
+     * Requests the broker subscriptions of all topic filters that have not yet
+     * been subscribed in a single SUBSCRIBE. The local subscriptions whose topic
+     * filters have been rejected by the broker are removed.
+     */
+    private <T> List<SubscriptionAck> subscribeAll(
+                                                  final Collection<T> requests,
+                                                  final Function<T, PendingSubscription> preparer) {
+        final List<PendingSubscription> pendingSubscriptions = new ArrayList<>();
+        try {
+            requests.forEach(r -> pendingSubscriptions.add(preparer.apply(r)));
+        } catch (final RuntimeException e) {
+            pendingSubscriptions.forEach(p -> releaseSubscription(p.channel, p.subscription));
+            throw e;
+        }
+        final Map<String, Mqtt5Subscription> brokerSubscriptions = new LinkedHashMap<>();
+        pendingSubscriptions.forEach(p -> brokerSubscriptions.putIfAbsent(p.channel, p.brokerSubscription));
+        try {
+            final Map<String, CompletableFuture<Mqtt5SubAckReasonCode>> futures =
+                    subscriptionRegistry.acquireBrokerSubscriptions(brokerSubscriptions.values(), this::sendSubscribe);
+            pendingSubscriptions.forEach(p -> onBrokerSubscription(p, futures.get(p.channel)));
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+                             .get(config.timeoutInMillis(), MILLISECONDS);
+
+            final List<SubscriptionAck> acks = new ArrayList<>();
+            for (final PendingSubscription pending : pendingSubscriptions) {
+                // the stream of a rejected topic filter gets closed
+                if (!isSubscriptionAcknowledged(futures.get(pending.channel).join())) {
+                    releaseSubscription(pending.channel, pending.subscription);
+                }
+                acks.add(pending.toAck());
+            }
+            return acks;
+        } catch (final ExecutionException e) {
+            logger.error("Error while subscribing to {}", brokerSubscriptions.keySet(), e);
+            pendingSubscriptions.forEach(p -> releaseSubscription(p.channel, p.subscription));
+            throw new RuntimeException(e.getCause());
+        } catch (final Exception e) {
+            logger.error("Error while subscribing to {}", brokerSubscriptions.keySet(), e);
+            pendingSubscriptions.forEach(p -> releaseSubscription(p.channel, p.subscription));
+            throw new RuntimeException(e);
+        }
+    }
 
-        // add topic prefix if available
+    /**
+     * Registers the local subscription and prepares its broker subscription
+     */
+    private PendingSubscription prepare(
+                                       MessageContext context,
+                                       final String subChannel,
+                                       final String pubChannel,
+                                       final String shareGroup,
+                                       final boolean isReplyToSub) {
+
+        // add topic prefix if available and the share name if the subscription
+        // belongs to a shared subscription group
         final String prefix = messagingClient.config.topicPrefix();
-        final String sChannel = addTopicPrefix(subChannel, prefix);
+        final String sChannel = toSharedSubscription(shareGroup, addTopicPrefix(subChannel, prefix));
         final String pChannel = addTopicPrefix(pubChannel, prefix);
 
+        final PushStreamProvider provider = new PushStreamProvider();
+        final StreamOptions streamOptions = StreamOptions.of(context == null ? null : context.getExtensions(), converter, streamExecutor);
+        final SimplePushEventSource<Message> source = acquirePushEventSource(provider, streamOptions);
+        final PushStream<Message> stream = createStream(provider, source, streamOptions); //NOSONAR
+
         try {
-            final MessageContextBuilderProvider builder = mcbFactory.getService();
-            try {
-                if (context == null) {
-                    context = builder.channel(sChannel).buildContext();
-                }
-            } finally {
-                mcbFactory.ungetService(builder);
+            if (context == null) {
+                final MessageContextProvider subscriptionContext = new MessageContextProvider();
+                subscriptionContext.channel = sChannel;
+                context = subscriptionContext;
             }
             requireNonNull(sChannel, "Channel cannot be null");
 
@@ -180,71 +472,448 @@ public final class MessageSubscriptionProvider implements MessageSubscription {
                 receiveLocal = true;
                 retainAsPublished = false;
             }
-
-            final ExtendedSubscription subscription = subscriptionRegistry.addSubscription(sChannel, pChannel, source::close, isReplyToSub);
             // @formatter:off
-			final CompletableFuture<Mqtt5SubAck> future = messagingClient.client.subscribeWith()
-										                                  .topicFilter(sChannel)
-										                                  .qos(MqttQos.fromCode(qos))
-										                                  .noLocal(receiveLocal)
-										                                  .retainAsPublished(retainAsPublished)
-										                                  .callback(p -> {
-										                                	  try {
-										                                		  final MessageContextBuilderProvider mcb = mcbFactory.getService();
-											                                	  try {
-											                                		  final Message message = toMessage(p, ctx, mcb);
-											                                              acknowledgeMessage(
-											                                                      message,
-											                                                      ctx,
-											                                                      source::publish,
-											                                                      bundleContext,
-											                                                      logger);
-											                                      } catch (final Exception e) {
-											                                           source.error(e);
-											                                      } finally {
-											                                           mcbFactory.ungetService(mcb);
-											                                      }
-										                                	  } catch (final Exception ex) {
-										                                		  logger.error("Exception occurred while processing message", ex);
-										                                		  source.error(ex);
-										                                	  }
-										                                   })
-										                                  .send();
-			future.thenAccept(ack -> {
-                	  if (isSubscriptionAcknowledged(ack)) {
-                		  subscription.setAcknowledged(true);
-                          logger.debug("New subscription request for '{}' processed successfully - {} > ID: {}", sChannel, ack, subscription.id);
-                      } else {
-                          logger.error("New subscription request for '{}' failed - {} > ID: {}", sChannel, ack, subscription.id);
-                      }
-            });
+            final Mqtt5Subscription brokerSubscription =
+                    Mqtt5Subscription.builder()
+                                     .topicFilter(sChannel)
+                                     .qos(MqttQos.fromCode(qos))
+                                     .noLocal(receiveLocal)
+                                     .retainAsPublished(retainAsPublished)
+                                     .build();
+            // @formatter:on
+
+            final UnsettledDeliveries unsettledDeliveries = new UnsettledDeliveries();
+            // every local subscription gets its own lazy view of the received message
+            final BiConsumer<Mqtt5Publish, Runnable> dispatcher = (p, settlement) -> {
+                final Runnable trackedSettlement = settlement == null ? null : unsettledDeliveries.track(settlement);
+                final Message message = toMessage(p, ctx, trackedSettlement, config.maxDecompressedSizeInBytes());
+                try {
+                    acknowledgeMessage(message, ctx, m -> {
+                        // a message that cannot reach the stream is settled immediately
+                        if (source.isConnected()) {
+                            source.publish(m);
+                        } else {
+                            settle(m);
+                        }
+                    }, bundleContext, logger);
+                    // a rejected message is not delivered to the stream
+                    if (message.getContext().getAcknowledgeState() == REJECTED) {
+                        settle(message);
+                    }
+                } catch (final Exception e) {
+                    logger.error("Exception occurred while processing message", e);
+                    settle(message);
+                    source.error(e);
+                }
+            };
+            final ExtendedSubscription subscription = subscriptionRegistry.addSubscription(sChannel, pChannel, source::close, isReplyToSub, dispatcher);
             stream.onClose(() -> {
             	logger.debug("Removing subscription '{}'", subscription.id);
             	subscriptionRegistry.removeSubscription(sChannel, subscription.id);
+            	ctx.closeAcknowledgeServices();
+            	// the messages still buffered by the stream are never consumed
+            	unsettledDeliveries.settleAll();
             });
-            future.get(config.timeoutInMillis(), MILLISECONDS);
-            return SubscriptionAck.of(stream, subscription.id);
-        } catch (final ExecutionException e) {
-            logger.error("Error while subscribing to {}", sChannel, e);
-            throw new RuntimeException(e.getCause());
+            // the delivery of a message is settled as soon as it leaves the buffer of the stream
+            final PushStream<Message> settlingStream = isManualAcknowledgement ? stream.map(MessageSubscriptionProvider::settle) : stream;
+            return new PendingSubscription(sChannel, settlingStream, subscription, brokerSubscription);
         } catch (final Exception e) {
             logger.error("Error while subscribing to {}", sChannel, e);
+            source.close();
             throw new RuntimeException(e);
         }
     }
 
-	private SimplePushEventSource<Message> acquirePushEventSource(final PushStreamProvider provider) {
-		return InterruptSafe.execute(() -> provider.createSimpleEventSource(Message.class));
+    private void onBrokerSubscription(final PendingSubscription pending, final CompletableFuture<Mqtt5SubAckReasonCode> future) {
+        final ExtendedSubscription sub = pending.subscription;
+        future.whenComplete((reasonCode, t) -> {
+            if (t == null && isSubscriptionAcknowledged(reasonCode)) {
+                sub.setAcknowledged(true);
+                logger.debug("New subscription request for '{}' processed successfully - {} > ID: {}", pending.channel, reasonCode, sub.id);
+            } else {
+                subscriptionRegistry.releaseBrokerSubscription(pending.channel, future);
+                logger.error("New subscription request for '{}' failed - {} > ID: {}", pending.channel, reasonCode, sub.id, t);
+            }
+        });
+    }
+
+    /**
+     * Sends a single SUBSCRIBE for all specified subscriptions except the shared
+     * ones which are sent separately with their own callbacks
+     *
+     * @return the reason codes of the subscriptions in the SUBACK in the same order
+     */
+    private List<CompletableFuture<Mqtt5SubAckReasonCode>> sendSubscribe(final List<Mqtt5Subscription> subscriptions) {
+        final List<Mqtt5Subscription> unshared = subscriptions.stream()
+                                                              .filter(s -> !s.getTopicFilter().isShared())
+                                                              .collect(toList());
+        final CompletableFuture<Mqtt5SubAck> future = unshared.isEmpty()
+                ? null
+                : messagingClient.client.subscribeWith().addSubscriptions(unshared).send();
+
+        final List<CompletableFuture<Mqtt5SubAckReasonCode>> reasonCodes = new ArrayList<>();
+        int unsharedIndex = 0;
+        for (final Mqtt5Subscription subscription : subscriptions) {
+            if (subscription.getTopicFilter().isShared()) {
+                reasonCodes.add(sendSharedSubscribe(subscription));
+            } else {
+                final int index = unsharedIndex++;
+                reasonCodes.add(future.handle((ack, t) -> getReasonCode(ack, t, index)));
+            }
+        }
+        return reasonCodes;
+    }
+
+    /**
+     * Sends the specified shared subscription with its own callback. A message
+     * received for a shared subscription only belongs to its share group and
+     * must not be dispatched to the other local subscriptions matching its topic
+     * (and vice versa), which the topic of the message alone cannot tell.
+     *
+     * @return the reason code of the subscription in the SUBACK
+     */
+    private CompletableFuture<Mqtt5SubAckReasonCode> sendSharedSubscribe(final Mqtt5Subscription subscription) {
+        final String channel = subscription.getTopicFilter().toString();
+        final Mqtt5Subscribe subscribe = Mqtt5Subscribe.builder().addSubscription(subscription).build();
+        return messagingClient.client.subscribe(subscribe, p -> dispatchShared(channel, p), isManualAcknowledgement)
+                                     .handle((ack, t) -> getReasonCode(ack, t, 0));
+    }
+
+    /**
+     * Returns the reason code of the subscription with the specified index in
+     * the SUBACK which is also available if the broker has rejected all
+     * subscriptions
+     */
+    private static Mqtt5SubAckReasonCode getReasonCode(final Mqtt5SubAck ack, final Throwable t, final int index) {
+        Mqtt5SubAck subAck = ack;
+        if (t != null) {
+            final Throwable cause = t instanceof CompletionException ? t.getCause() : t;
+            if (!(cause instanceof Mqtt5SubAckException)) {
+                throw new CompletionException(cause);
+            }
+            subAck = ((Mqtt5SubAckException) cause).getMqttMessage();
+        }
+        return subAck.getReasonCodes().get(index);
+    }
+
+    private String getShareGroup(final MessageContext context) {
+        final Map<String, Object> extensions = context.getExtensions();
+        return extensions == null ? null : adaptTo(extensions.get(SHARE_GROUP), String.class, converter);
+    }
+
+    /**
+     * All messages received for the subscriptions are consumed by a single global
+     * flow and dispatched to the local subscriptions matching the topic
+     */
+    private void registerGlobalPublishFlow(final Mqtt5AsyncClient client) {
+        client.publishes(SUBSCRIBED, this::dispatch, isManualAcknowledgement);
+    }
+
+    /**
+     * Restores the broker subscriptions on every reconnection. The subscriptions
+     * are kept as long as the broker has resumed the session of the same client
+     * instance. Otherwise, all of them are re-issued in a single SUBSCRIBE.
+     */
+    private void onConnected() {
+        final Mqtt5AsyncClient client = messagingClient.client;
+        final Mqtt5AsyncClient previousClient = connectedClient;
+        connectedClient = client;
+        if (previousClient == null) {
+            // the subscriptions requested so far are sent on the first connection
+            return;
+        }
+        if (previousClient == client && messagingClient.isSessionPresent()) {
+            logger.debug("Broker has resumed the session - the subscriptions are still active");
+            return;
+        }
+        final Map<String, CompletableFuture<Mqtt5SubAckReasonCode>> futures =
+                subscriptionRegistry.renewBrokerSubscriptions(this::sendSubscribe);
+        if (futures.isEmpty()) {
+            return;
+        }
+        logger.info("Re-subscribing to {} topic filters in a single request", futures.size());
+        futures.forEach((channel, future) -> future.whenComplete((reasonCode, t) -> {
+            if (t != null) {
+                // the subscription is re-issued again on the next connection
+                logger.error("Re-subscription request for '{}' failed", channel, t);
+            } else if (!isSubscriptionAcknowledged(reasonCode)) {
+                // the streams of the rejected topic filter get closed
+                logger.error("Re-subscription request for '{}' has been rejected - {}", channel, reasonCode);
+                subscriptionRegistry.releaseBrokerSubscription(channel, future);
+                subscriptionRegistry.removeSubscription(channel);
+            } else {
+                logger.debug("Re-subscription request for '{}' processed successfully - {}", channel, reasonCode);
+            }
+        }));
+    }
+
+    private void dispatch(final Mqtt5Publish publish) {
+        dispatch(publish, c -> subscriptionRegistry.matchSubscriptions(publish.getTopic().toString(), c));
+    }
+
+    /**
+     * Dispatches a message received for the specified shared subscription only to
+     * the local subscriptions of its share group
+     */
+    private void dispatchShared(final String channel, final Mqtt5Publish publish) {
+        dispatch(publish, c -> subscriptionRegistry.getSubscriptions(channel).forEach(c));
+    }
+
+    private void dispatch(final Mqtt5Publish publish, final Consumer<Consumer<ExtendedSubscription>> router) {
+        if (!isActive) {
+            acknowledge(publish);
+            return;
+        }
+        if (ChunkAssembler.isChunk(publish)) {
+            final List<ExtendedSubscription> subscriptions = new ArrayList<>(2);
+            router.accept(subscriptions::add);
+            // a chunk is acknowledged once it has been buffered as the reassembled
+            // message cannot be acknowledged to the broker (a chunk is only buffered
+            // by the flow that has subscriptions to dispatch it to)
+            final Mqtt5Publish message = subscriptions.isEmpty() ? null : assemble(publish);
+            acknowledge(publish);
+            if (message != null) {
+                subscriptions.forEach(s -> s.dispatcher.accept(message, null));
+            }
+            return;
+        }
+        if (!isManualAcknowledgement) {
+            router.accept(s -> s.dispatcher.accept(publish, null));
+            return;
+        }
+        final Settlement settlement = new Settlement(publish);
+        router.accept(s -> {
+            settlement.retain();
+            s.dispatcher.accept(publish, settlement.release);
+        });
+        // releases the dispatching itself such that the publish gets acknowledged
+        // immediately if no subscription matches or all deliveries have been settled
+        settlement.release.run();
+    }
+
+    /**
+     * Acknowledges the specified message to the broker if the manual
+     * acknowledgement is enabled
+     */
+    private void acknowledge(final Mqtt5Publish publish) {
+        if (!isManualAcknowledgement) {
+            return;
+        }
+        try {
+            publish.acknowledge();
+        } catch (final RuntimeException e) {
+            logger.debug("Message received on '{}' cannot be acknowledged - {}", publish.getTopic(), e.getMessage());
+        }
+    }
+
+    private static Message settle(final Message message) {
+        final MessageContext context = message.getContext();
+        if (context instanceof MessageContextProvider) {
+            ((MessageContextProvider) context).settle();
+        }
+        return message;
+    }
+
+    /**
+     * Adds the chunk to its transfer
+     *
+     * @return the reassembled message or {@code null} if the transfer is not yet
+     *         complete or the chunk has been dropped
+     */
+    private Mqtt5Publish assemble(final Mqtt5Publish chunk) {
+        try {
+            return chunkAssembler.add(chunk);
+        } catch (final IllegalArgumentException e) {
+            logger.warn("Chunk received on '{}' has been dropped - {}", chunk.getTopic(), e.getMessage());
+            return null;
+        }
+    }
+
+    private void releaseSubscription(final String channel, final ExtendedSubscription subscription) {
+        if (subscription != null) {
+            subscriptionRegistry.removeSubscription(channel, subscription.id);
+        }
+    }
+
+	private SimplePushEventSource<Message> acquirePushEventSource(
+	        final PushStreamProvider provider,
+	        final StreamOptions options) {
+		if (options.isPartitioned()) {
+			return createPartitionedEventSource(options);
+		}
+		if (options.isDefault()) {
+			return InterruptSafe.execute(() -> provider.createSimpleEventSource(Message.class));
+		}
+		return InterruptSafe.execute(() -> options.applyToSource(provider.buildSimpleEventSource(Message.class)).build());
+	}
+
+	private SimplePushEventSource<Message> createPartitionedEventSource(final StreamOptions options) {
+		final int partitions = options.partitions();
+		final String partitionKey = options.partitionKey();
+		final Integer bufferSize = options.bufferSize();
+		final int laneCapacity = bufferSize == null ? PartitionedPushEventSource.DEFAULT_LANE_CAPACITY : bufferSize;
+
+		Executor executor = options.executor();
+		if (executor == null) {
+			executor = getPartitionExecutor();
+		}
+		// @formatter:off
+		return new PartitionedPushEventSource<>(
+		                partitions,
+		                laneCapacity,
+		                m -> getPartitionKey(m, partitionKey),
+		                executor,
+		                promiseFactory,
+		                this::onLaneOverflow,
+		                () -> {});
+		// @formatter:on
 	}
 
-    private boolean isSubscriptionAcknowledged(final Mqtt5SubAck ack) {
+	private synchronized Executor getPartitionExecutor() {
+		if (partitionExecutor == null) {
+			// @formatter:off
+			final ThreadFactory threadFactory =
+					new ThreadFactoryBuilder()
+					        .setThreadFactoryName("mqtt-subscription-partition")
+					        .setThreadNameFormat("-%d")
+					        .build();
+			// @formatter:on
+			partitionExecutor = newFixedThreadPool(Runtime.getRuntime().availableProcessors(), threadFactory);
+		}
+		return partitionExecutor;
+	}
+
+	/**
+	 * Drops a message that does not fit into its full lane as the thread of the
+	 * MQTT client must not be blocked. With manual acknowledgement, the lanes do not
+	 * overflow as long as they can hold the receive maximum of the client.
+	 */
+	private void onLaneOverflow(final Message message) {
+		logger.warn("Message received on '{}' has been dropped as its lane is full", message.getContext().getChannel());
+		settle(message);
+	}
+
+	private static Object getPartitionKey(final Message message, final String userProperty) {
+		final MessageContext context = message.getContext();
+		if (userProperty != null) {
+			final Object userProperties = context.getExtensions().get(USER_PROPERTIES);
+			if (userProperties instanceof Map) {
+				final Object key = ((Map<?, ?>) userProperties).get(userProperty);
+				if (key != null) {
+					return key;
+				}
+			}
+		}
+		return context.getChannel();
+	}
+
+	private PushStream<Message> createStream(
+	        final PushStreamProvider provider,
+	        final SimplePushEventSource<Message> source,
+	        final StreamOptions options) {
+		if (options.isDefault()) {
+			return provider.createStream(source);
+		}
+		if (options.isPartitioned()) {
+			// the lanes deliver the messages directly to keep them ordered per key
+			return provider.buildStream(source).unbuffered().build();
+		}
+		final PushStreamBuilder<Message, BlockingQueue<PushEvent<? extends Message>>> builder = provider.buildStream(source);
+		return options.applyToStream(builder).build();
+	}
+
+    private boolean isSubscriptionAcknowledged(final Mqtt5SubAckReasonCode reasonCode) {
         final List<Mqtt5SubAckReasonCode> acceptedCodes = Arrays.asList(
                 GRANTED_QOS_0,
                 GRANTED_QOS_1,
                 GRANTED_QOS_2
         );
-        final List<Mqtt5SubAckReasonCode> reasonCodes = ack.getReasonCodes();
-        return reasonCodes.stream().findFirst().filter(acceptedCodes::contains).isPresent();
+        return acceptedCodes.contains(reasonCode);
+    }
+
+    /**
+     * Acknowledges a received message to the broker once all local subscriptions
+     * that it has been dispatched to have settled their deliveries
+     */
+    private final class Settlement {
+
+        private final Mqtt5Publish publish;
+        /** the pending deliveries including the dispatching itself */
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final Runnable release = this::release;
+
+        Settlement(final Mqtt5Publish publish) {
+            this.publish = publish;
+        }
+
+        void retain() {
+            pending.incrementAndGet();
+        }
+
+        private void release() {
+            if (pending.decrementAndGet() == 0) {
+                acknowledge(publish);
+            }
+        }
+    }
+
+    /**
+     * Tracks the deliveries of a local subscription that have not yet been settled
+     * such that they can be settled once its stream has been closed
+     */
+    private static final class UnsettledDeliveries {
+
+        private final Set<Runnable> settlements = ConcurrentHashMap.newKeySet();
+        private volatile boolean isClosed;
+
+        Runnable track(final Runnable settlement) {
+            final Runnable tracked = new Runnable() {
+                @Override
+                public void run() {
+                    if (settlements.remove(this)) {
+                        settlement.run();
+                    }
+                }
+            };
+            settlements.add(tracked);
+            // a delivery tracked after the stream has been closed is settled right away
+            if (isClosed) {
+                tracked.run();
+            }
+            return tracked;
+        }
+
+        void settleAll() {
+            isClosed = true;
+            settlements.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * A registered local subscription whose broker subscription is yet to be
+     * requested
+     */
+    private static final class PendingSubscription {
+
+        final String channel;
+        final PushStream<Message> stream;
+        final ExtendedSubscription subscription;
+        final Mqtt5Subscription brokerSubscription;
+
+        PendingSubscription(
+                final String channel,
+                final PushStream<Message> stream,
+                final ExtendedSubscription subscription,
+                final Mqtt5Subscription brokerSubscription) {
+            this.channel = channel;
+            this.stream = stream;
+            this.subscription = subscription;
+            this.brokerSubscription = brokerSubscription;
+        }
+
+        SubscriptionAck toAck() {
+            return SubscriptionAck.of(stream, subscription.id, channel);
+        }
     }
 
 }
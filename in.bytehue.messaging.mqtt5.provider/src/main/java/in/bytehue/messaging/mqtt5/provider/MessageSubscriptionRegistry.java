@@ -15,17 +15,34 @@
  ******************************************************************************/
 package in.bytehue.messaging.mqtt5.provider;
 
+import static com.hivemq.client.mqtt.mqtt5.message.subscribe.Mqtt5RetainHandling.SEND_IF_SUBSCRIPTION_DOES_NOT_EXIST;
 import static com.hivemq.client.mqtt.mqtt5.message.unsubscribe.unsuback.Mqtt5UnsubAckReasonCode.NO_SUBSCRIPTIONS_EXISTED;
 import static com.hivemq.client.mqtt.mqtt5.message.unsubscribe.unsuback.Mqtt5UnsubAckReasonCode.SUCCESS;
+import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.isSharedSubscription;
 import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.toServiceReferenceDTO;
 
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
@@ -40,9 +57,17 @@ import org.osgi.service.messaging.dto.ChannelDTO;
 import org.osgi.service.messaging.dto.ReplyToSubscriptionDTO;
 import org.osgi.service.messaging.dto.SubscriptionDTO;
 
+import com.hivemq.client.mqtt.datatypes.MqttTopicFilter;
+import com.hivemq.client.mqtt.mqtt5.exceptions.Mqtt5UnsubAckException;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.client.mqtt.mqtt5.message.subscribe.Mqtt5Subscription;
+import com.hivemq.client.mqtt.mqtt5.message.subscribe.suback.Mqtt5SubAckReasonCode;
 import com.hivemq.client.mqtt.mqtt5.message.unsubscribe.unsuback.Mqtt5UnsubAck;
 import com.hivemq.client.mqtt.mqtt5.message.unsubscribe.unsuback.Mqtt5UnsubAckReasonCode;
 
+import in.bytehue.messaging.mqtt5.provider.helper.SubscriptionAck;
+import in.bytehue.messaging.mqtt5.provider.helper.TopicTrie;
+
 @Component(service = MessageSubscriptionRegistry.class)
 public final class MessageSubscriptionRegistry {
 
@@ -59,30 +84,247 @@ public final class MessageSubscriptionRegistry {
 	// there can be multiple subscriptions for a single topic
 	private final Map<String, Map<String, ExtendedSubscription>> subscriptions = new ConcurrentHashMap<>();
 
+	// topic as key and the pending or completed broker subscription (the reason
+	// code of the topic filter in the SUBACK) as value
+	// a topic filter is subscribed only once to the broker irrespective of the
+	// number of local subscriptions (reference counted by the local subscriptions)
+	private final Map<String, CompletableFuture<Mqtt5SubAckReasonCode>> brokerSubscriptions = new ConcurrentHashMap<>();
+
+	// topic as key and the subscription options of its broker subscription as value
+	// to re-issue the broker subscriptions if the broker has not kept the session
+	private final Map<String, Mqtt5Subscription> brokerSubscriptionOptions = new ConcurrentHashMap<>();
+
+	// index of the local subscriptions by their topic filters to find the ones
+	// matching the topic of a received message (shared subscriptions are not
+	// indexed as their messages are received on a dedicated flow of the client)
+	private final TopicTrie<ExtendedSubscription> subscriptionTrie = new TopicTrie<>();
+
+	// the local subscriptions matching the recently received topics such that a
+	// topic is matched against the trie only once as long as the subscriptions do
+	// not change (replaced by an empty table on every change)
+	private volatile Map<String, ExtendedSubscription[]> routes = new ConcurrentHashMap<>();
+
+	private static final int MAX_ROUTES = 8_192;
+	private static final ExtendedSubscription[] NO_ROUTE = new ExtendedSubscription[0];
+
 	public synchronized ExtendedSubscription addSubscription(final String subChannel, final String pubChannel,
-			final Runnable connectedStreamCloser, final boolean isReplyToSub) {
+			final Runnable connectedStreamCloser, final boolean isReplyToSub,
+			final BiConsumer<Mqtt5Publish, Runnable> dispatcher) {
 		final ExtendedSubscription sub = new ExtendedSubscription(subChannel, pubChannel, connectedStreamCloser,
-				isReplyToSub);
+				isReplyToSub, dispatcher);
 		subscriptions.computeIfAbsent(subChannel, c -> new ConcurrentHashMap<>()).put(sub.id, sub);
+		if (!isSharedSubscription(subChannel)) {
+			subscriptionTrie.add(subChannel, sub);
+			invalidateRoutes();
+		}
 		return sub;
 	}
 
+	/**
+	 * Returns the broker subscription of the specified topic filter. The broker
+	 * subscription is only requested using the specified subscriber if the topic
+	 * filter has not yet been subscribed.
+	 */
+	public synchronized CompletableFuture<Mqtt5SubAckReasonCode> acquireBrokerSubscription(
+			final Mqtt5Subscription subscription,
+			final Function<List<Mqtt5Subscription>, List<CompletableFuture<Mqtt5SubAckReasonCode>>> subscriber) {
+		final String subChannel = subscription.getTopicFilter().toString();
+		return acquireBrokerSubscriptions(singletonList(subscription), subscriber).get(subChannel);
+	}
+
+	/**
+	 * Returns the broker subscriptions of the topic filters of the specified
+	 * subscriptions. The topic filters that have not yet been subscribed, or whose
+	 * broker subscriptions have a lower QoS than requested, are requested at once
+	 * using the specified subscriber which returns their broker subscriptions in
+	 * the same order.
+	 */
+	public synchronized Map<String, CompletableFuture<Mqtt5SubAckReasonCode>> acquireBrokerSubscriptions(
+			final Collection<Mqtt5Subscription> subscriptions,
+			final Function<List<Mqtt5Subscription>, List<CompletableFuture<Mqtt5SubAckReasonCode>>> subscriber) {
+		final Map<String, CompletableFuture<Mqtt5SubAckReasonCode>> acquired = new LinkedHashMap<>();
+		final Map<String, Mqtt5Subscription> missing = new LinkedHashMap<>();
+		for (final Mqtt5Subscription subscription : subscriptions) {
+			final String subChannel = subscription.getTopicFilter().toString();
+			final CompletableFuture<Mqtt5SubAckReasonCode> existing = brokerSubscriptions.get(subChannel);
+			if (existing != null) {
+				final Mqtt5Subscription current = brokerSubscriptionOptions.get(subChannel);
+				final Mqtt5Subscription merged = current == null ? null : merge(current, subscription);
+				if (merged != null && merged != current) {
+					// the SUBSCRIBE replaces the options of the existing broker subscription
+					missing.put(subChannel, merged);
+				} else {
+					acquired.put(subChannel, existing);
+				}
+			} else {
+				missing.putIfAbsent(subChannel, subscription);
+			}
+		}
+		if (!missing.isEmpty()) {
+			request(missing, subscriber).forEach(acquired::put);
+		}
+		return acquired;
+	}
+
+	/**
+	 * Requests all broker subscriptions again at once using the specified
+	 * subscriber (for example, if the broker has not kept the session of the
+	 * client)
+	 *
+	 * @return the renewed broker subscriptions by their topic filters
+	 */
+	public synchronized Map<String, CompletableFuture<Mqtt5SubAckReasonCode>> renewBrokerSubscriptions(
+			final Function<List<Mqtt5Subscription>, List<CompletableFuture<Mqtt5SubAckReasonCode>>> subscriber) {
+		if (brokerSubscriptionOptions.isEmpty()) {
+			return emptyMap();
+		}
+		return request(new LinkedHashMap<>(brokerSubscriptionOptions), subscriber);
+	}
+
+	/**
+	 * Returns the options of the broker subscription that serves both the current
+	 * and the requested local subscriptions, i.e. the current options upgraded to
+	 * the higher QoS. The other options cannot be combined without changing the
+	 * deliveries of the current local subscriptions, hence they remain effective.
+	 *
+	 * @return the current options if they already serve the requested ones
+	 */
+	private Mqtt5Subscription merge(final Mqtt5Subscription current, final Mqtt5Subscription requested) {
+		final String subChannel = current.getTopicFilter().toString();
+		if (current.isNoLocal() != requested.isNoLocal()
+				|| current.isRetainAsPublished() != requested.isRetainAsPublished()) {
+			logger.warn(
+					"No-local and retain-as-published options of the new subscription to '{}' differ from its broker subscription - the options of the broker subscription remain effective",
+					subChannel);
+		}
+		if (requested.getQos().getCode() <= current.getQos().getCode()) {
+			return current;
+		}
+		if (isSharedSubscription(subChannel)) {
+			// the callback of the shared subscription must not be registered twice
+			logger.warn("Shared subscription to '{}' is kept at {} although {} has been requested", subChannel,
+					current.getQos(), requested.getQos());
+			return current;
+		}
+		// the retained messages have already been sent for the existing subscription
+		return current.extend().qos(requested.getQos()).retainHandling(SEND_IF_SUBSCRIPTION_DOES_NOT_EXIST).build();
+	}
+
+	private Map<String, CompletableFuture<Mqtt5SubAckReasonCode>> request(
+			final Map<String, Mqtt5Subscription> subscriptions,
+			final Function<List<Mqtt5Subscription>, List<CompletableFuture<Mqtt5SubAckReasonCode>>> subscriber) {
+		final List<String> subChannels = new ArrayList<>(subscriptions.keySet());
+		final List<CompletableFuture<Mqtt5SubAckReasonCode>> requested = subscriber
+				.apply(new ArrayList<>(subscriptions.values()));
+		final Map<String, CompletableFuture<Mqtt5SubAckReasonCode>> result = new LinkedHashMap<>();
+		for (int i = 0; i < subChannels.size(); i++) {
+			final String subChannel = subChannels.get(i);
+			brokerSubscriptions.put(subChannel, requested.get(i));
+			brokerSubscriptionOptions.put(subChannel, subscriptions.get(subChannel));
+			result.put(subChannel, requested.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Forgets the specified broker subscription (for example, if the broker has
+	 * rejected it) such that the next local subscription requests it again
+	 */
+	public synchronized void releaseBrokerSubscription(final String subChannel,
+			final CompletableFuture<Mqtt5SubAckReasonCode> brokerSubscription) {
+		if (brokerSubscriptions.remove(subChannel, brokerSubscription)) {
+			brokerSubscriptionOptions.remove(subChannel);
+		}
+	}
+
+	/**
+	 * Returns the local subscriptions of the specified topic filter that the
+	 * received messages need to be dispatched to
+	 */
+	public Collection<ExtendedSubscription> getSubscriptions(final String channel) {
+		return subscriptions.getOrDefault(channel, emptyMap()).values();
+	}
+
+	/**
+	 * Hands over all local subscriptions whose topic filters match the specified
+	 * topic to the specified consumer (except the shared subscriptions whose
+	 * messages are dispatched using {@link #getSubscriptions(String)})
+	 */
+	public void matchSubscriptions(final String topic, final Consumer<ExtendedSubscription> consumer) {
+		final Map<String, ExtendedSubscription[]> currentRoutes = routes;
+		ExtendedSubscription[] route = currentRoutes.get(topic);
+		if (route == null) {
+			final List<ExtendedSubscription> matched = new ArrayList<>(2);
+			subscriptionTrie.match(topic, matched::add);
+			route = matched.isEmpty() ? NO_ROUTE : matched.toArray(NO_ROUTE);
+			// topics that are hardly ever repeated must not displace the cached ones
+			if (currentRoutes.size() < MAX_ROUTES) {
+				currentRoutes.put(topic, route);
+			}
+		}
+		for (final ExtendedSubscription sub : route) {
+			consumer.accept(sub);
+		}
+	}
+
 	public synchronized void removeSubscription(final String channel, final String id) {
+		if (remove(channel, id)) {
+			sendUnsubscribe(singletonList(channel));
+		}
+	}
+
+	/**
+	 * Removes the specified local subscriptions and releases the broker
+	 * subscriptions of all topic filters without any remaining local subscription
+	 * using a single UNSUBSCRIBE
+	 */
+	public synchronized void removeSubscriptions(final Collection<SubscriptionAck> acks) {
+		final Set<String> released = new LinkedHashSet<>();
+		for (final SubscriptionAck ack : acks) {
+			if (remove(ack.channel(), ack.id())) {
+				released.add(ack.channel());
+			}
+		}
+		sendUnsubscribe(released);
+	}
+
+	/**
+	 * @return {@code true} if the last local subscription of the topic filter has
+	 *         been removed
+	 */
+	private boolean remove(final String channel, final String id) {
 		final Map<String, ExtendedSubscription> existingSubscriptions = subscriptions.get(channel);
-		if (existingSubscriptions == null || existingSubscriptions.isEmpty()) {
-			unsubscribeSubscription(channel);
-			return;
+		if (existingSubscriptions == null) {
+			return false;
 		}
 		final ExtendedSubscription existingSubscription = existingSubscriptions.remove(id);
-		if (existingSubscription != null) {
-			existingSubscription.connectedStreamCloser.run();
+		if (existingSubscription == null) {
+			return false;
+		}
+		if (!isSharedSubscription(channel)) {
+			subscriptionTrie.remove(channel, existingSubscription);
+			invalidateRoutes();
+		}
+		existingSubscription.connectedStreamCloser.run();
+		// the last local subscription releases the broker subscription
+		if (existingSubscriptions.isEmpty()) {
+			subscriptions.remove(channel);
+			return true;
 		}
+		return false;
 	}
 
 	public synchronized void removeSubscription(final String channel) {
 		final Map<String, ExtendedSubscription> exisitngSubscriptions = subscriptions.remove(channel);
 		if (exisitngSubscriptions != null) {
-			exisitngSubscriptions.forEach((k, v) -> v.connectedStreamCloser.run());
+			final boolean isIndexed = !isSharedSubscription(channel);
+			exisitngSubscriptions.forEach((k, v) -> {
+				if (isIndexed) {
+					subscriptionTrie.remove(channel, v);
+				}
+				v.connectedStreamCloser.run();
+			});
+			invalidateRoutes();
 		}
 	}
 
@@ -92,19 +334,45 @@ public final class MessageSubscriptionRegistry {
 	}
 
 	public synchronized void unsubscribeSubscription(final String subChannel) {
-		messagingClient.client.unsubscribeWith().addTopicFilter(subChannel).send().thenAccept(ack -> {
-			if (isUnsubscriptionAcknowledged(ack)) {
-				removeSubscription(subChannel);
-				logger.debug("Unsubscription request for '{}' processed successfully - {}", subChannel, ack);
-			} else {
-				logger.error("Unsubscription request for '{}' failed - {}", subChannel, ack);
+		removeSubscription(subChannel);
+		sendUnsubscribe(singletonList(subChannel));
+	}
+
+	/**
+	 * Sends a single UNSUBSCRIBE for all specified topic filters that are
+	 * subscribed to the broker
+	 */
+	private void sendUnsubscribe(final Collection<String> subChannels) {
+		final List<String> topicFilters = new ArrayList<>();
+		for (final String subChannel : subChannels) {
+			brokerSubscriptionOptions.remove(subChannel);
+			if (brokerSubscriptions.remove(subChannel) != null) {
+				topicFilters.add(subChannel);
+			}
+		}
+		if (topicFilters.isEmpty()) {
+			return;
+		}
+		final List<MqttTopicFilter> filters = topicFilters.stream().map(MqttTopicFilter::of).collect(toList());
+		messagingClient.client.unsubscribeWith().addTopicFilters(filters).send().whenComplete((ack, t) -> {
+			final List<Mqtt5UnsubAckReasonCode> reasonCodes = getReasonCodes(ack, t);
+			for (int i = 0; i < topicFilters.size(); i++) {
+				final String subChannel = topicFilters.get(i);
+				if (i < reasonCodes.size() && isUnsubscriptionAcknowledged(reasonCodes.get(i))) {
+					logger.debug("Unsubscription request for '{}' processed successfully - {}", subChannel, ack);
+				} else {
+					logger.error("Unsubscription request for '{}' failed - {}", subChannel, ack, t);
+				}
 			}
 		});
 	}
 
 	@Deactivate
-	public void clearAllSubscriptions() {
-		subscriptions.keySet().stream().forEach(this::unsubscribeSubscription);
+	public synchronized void clearAllSubscriptions() {
+		final Set<String> channels = new HashSet<>(subscriptions.keySet());
+		channels.addAll(brokerSubscriptions.keySet());
+		channels.forEach(this::removeSubscription);
+		sendUnsubscribe(channels);
 	}
 
 	public synchronized SubscriptionDTO[] getSubscriptionDTOs() {
@@ -174,10 +442,32 @@ public final class MessageSubscriptionRegistry {
 		return subscriptionDTO;
 	}
 
-	private boolean isUnsubscriptionAcknowledged(final Mqtt5UnsubAck ack) {
+	/**
+	 * Discards the cached routes after the trie has been modified. A lookup that
+	 * still uses the previous table caches its result in the discarded one.
+	 */
+	private void invalidateRoutes() {
+		routes = new ConcurrentHashMap<>();
+	}
+
+	private boolean isUnsubscriptionAcknowledged(final Mqtt5UnsubAckReasonCode reasonCode) {
 		final List<Mqtt5UnsubAckReasonCode> acceptedCodes = Arrays.asList(SUCCESS, NO_SUBSCRIPTIONS_EXISTED);
-		final List<Mqtt5UnsubAckReasonCode> reasonCodes = ack.getReasonCodes();
-		return reasonCodes.stream().findFirst().filter(acceptedCodes::contains).isPresent();
+		return acceptedCodes.contains(reasonCode);
+	}
+
+	/**
+	 * Returns the reason codes of the topic filters of the UNSUBACK which is also
+	 * available if the broker has rejected all topic filters
+	 */
+	private static List<Mqtt5UnsubAckReasonCode> getReasonCodes(final Mqtt5UnsubAck ack, final Throwable t) {
+		if (ack != null) {
+			return ack.getReasonCodes();
+		}
+		final Throwable cause = t instanceof CompletionException ? t.getCause() : t;
+		if (cause instanceof Mqtt5UnsubAckException) {
+			return ((Mqtt5UnsubAckException) cause).getMqttMessage().getReasonCodes();
+		}
+		return emptyList();
 	}
 
 	static class ExtendedSubscription {
@@ -187,13 +477,16 @@ public final class MessageSubscriptionRegistry {
 		volatile boolean isReplyToSub;
 		ChannelDTO subChannel;
 		Runnable connectedStreamCloser;
+		BiConsumer<Mqtt5Publish, Runnable> dispatcher;
 		ServiceReferenceDTO handlerReference;
 		Map<String, ChannelDTO> pubChannels = new ConcurrentHashMap<>();
 
 		private ExtendedSubscription(final String subChannel, final String pubChannel,
-				final Runnable connectedStreamCloser, final boolean isReplyToSub) {
+				final Runnable connectedStreamCloser, final boolean isReplyToSub,
+				final BiConsumer<Mqtt5Publish, Runnable> dispatcher) {
 			id = UUID.randomUUID().toString();
 			this.connectedStreamCloser = connectedStreamCloser;
+			this.dispatcher = dispatcher;
 			this.subChannel = createChannelDTO(subChannel);
 			this.isReplyToSub = isReplyToSub;
 			if (pubChannel != null) {
@@ -47,6 +47,7 @@ import in.bytehue.messaging.mqtt5.provider.MessagePublisherProvider;
 import in.bytehue.messaging.mqtt5.provider.MessageSubscriptionProvider;
 import in.bytehue.messaging.mqtt5.provider.helper.FelixGogoCommand;
 import in.bytehue.messaging.mqtt5.provider.helper.Table;
+import in.bytehue.messaging.mqtt5.provider.helper.TopicAliasStatistics;
 
 // @formatter:off
 @Descriptor("MQTT 5 Messaging")
@@ -112,7 +113,12 @@ public final class MqttCommand {
               .append(System.lineSeparator())
               .append("ReplyTo Subscriptions: ")
               .append(System.lineSeparator())
-              .append(replyToSubscriptions);
+              .append(replyToSubscriptions)
+              .append(System.lineSeparator())
+              .append(System.lineSeparator())
+              .append("Topic Aliases: ")
+              .append(System.lineSeparator())
+              .append(prepareTopicAliases(publisher.topicAliasStatistics()));
 
         if (showconfig) {
             output.append(System.lineSeparator())
@@ -273,6 +279,21 @@ public final class MqttCommand {
         return table.print();
     }
 
+    private String prepareTopicAliases(final TopicAliasStatistics statistics) {
+        final Table table = new Table();
+
+        table.setShowVerticalLines(true);
+        table.setHeaders("Name", "Value");
+
+        table.addRow("Granted Topic Aliases", String.valueOf(statistics.capacity()));
+        table.addRow("Published Messages", String.valueOf(statistics.publishes()));
+        table.addRow("Topic Bytes", String.valueOf(statistics.topicBytes()));
+        table.addRow("Hypothetical Topic Bytes Saved (LFU Estimate)", String.valueOf(statistics.hypotheticalSavedBytes()));
+        table.addRow("Hot Topics", statistics.hotTopics().toString());
+
+        return table.print();
+    }
+
     private String prepareConfig(final Config config, final Converter converter) {
         final Table table = new Table();
 
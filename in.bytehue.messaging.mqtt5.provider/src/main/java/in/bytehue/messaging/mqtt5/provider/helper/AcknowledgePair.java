@@ -15,8 +15,6 @@
  ******************************************************************************/
 package in.bytehue.messaging.mqtt5.provider.helper;
 
-import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.getOptionalService;
-
 import org.osgi.framework.BundleContext;
 import org.osgi.service.log.Logger;
 
@@ -27,6 +25,10 @@ public final class AcknowledgePair<B> {
 
 	private Class<?> clazz;
 
+	// the service matching the filter is tracked as it is looked up for every
+	// received message
+	private volatile TrackedService<?> trackedService;
+
 	public static <B> AcknowledgePair<B> emptyOf(final Class<?> clazz) {
 		return new AcknowledgePair<>(clazz);
 	}
@@ -53,8 +55,9 @@ public final class AcknowledgePair<B> {
 		return concrete;
 	}
 
-	public void setServiceFilter(final String first) {
+	public synchronized void setServiceFilter(final String first) {
 		this.serviceFilter = first;
+		close();
 	}
 
 	public void setConcrete(final B concrete) {
@@ -65,8 +68,35 @@ public final class AcknowledgePair<B> {
 	public B findEffective(final BundleContext context, final Logger logger) {
 		B effective = null;
 		if (serviceFilter != null) {
-			effective = (B) getOptionalService(clazz, serviceFilter, context, logger).orElse(null);
+			TrackedService<?> service = trackedService;
+			if (service == null) {
+				service = trackedService(context, logger);
+			}
+			if (service != null) {
+				effective = (B) service.get();
+			}
 		}
 		return effective == null ? concrete : effective;
 	}
+
+	/**
+	 * Stops tracking the service matching the filter (if tracked)
+	 */
+	public synchronized void close() {
+		if (trackedService != null) {
+			trackedService.close();
+			trackedService = null;
+		}
+	}
+
+	private synchronized TrackedService<?> trackedService(final BundleContext context, final Logger logger) {
+		if (trackedService == null) {
+			try {
+				trackedService = TrackedService.of(clazz, serviceFilter, context);
+			} catch (final Exception e) {
+				logger.warn("Service '{}' cannot be tracked using the filter '{}'", clazz.getName(), serviceFilter, e);
+			}
+		}
+		return trackedService;
+	}
 }
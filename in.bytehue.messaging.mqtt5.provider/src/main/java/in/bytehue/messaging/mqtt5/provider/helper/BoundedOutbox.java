@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider.helper;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * A bounded in-memory outbox that stores elements which cannot be forwarded
+ * immediately and forwards them later on in the same order as they have been
+ * stored.
+ *
+ * <p>
+ * As long as the outbox holds elements that have not been forwarded yet, newly
+ * offered elements are stored as well such that they cannot overtake the
+ * earlier ones.
+ *
+ * @param <T> the type of the elements
+ */
+public final class BoundedOutbox<T> {
+
+	/**
+	 * The policy to apply if an element is offered to a full outbox
+	 */
+	public enum OverflowPolicy {
+		/** the oldest stored element is dropped to make room for the new one */
+		DROP_OLDEST,
+		/** the new element is dropped */
+		DROP_NEWEST,
+		/** the caller waits until there is room for the new element */
+		BLOCK
+	}
+
+	private final int capacity;
+	private final OverflowPolicy policy;
+	private final Consumer<? super T> dropHandler;
+
+	private final ArrayDeque<T> elements = new ArrayDeque<>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notFull = lock.newCondition();
+
+	private boolean isDraining;
+
+	/**
+	 * Creates a new outbox
+	 *
+	 * @param capacity the maximum number of elements to store (must be positive)
+	 * @param policy the policy to apply if the outbox is full
+	 * @param dropHandler the handler that gets notified with every dropped
+	 *            element
+	 */
+	public BoundedOutbox(final int capacity, final OverflowPolicy policy, final Consumer<? super T> dropHandler) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("'capacity' must be positive");
+		}
+		this.capacity = capacity;
+		this.policy = requireNonNull(policy, "'policy' must not be null");
+		this.dropHandler = requireNonNull(dropHandler, "'dropHandler' must not be null");
+	}
+
+	/**
+	 * Stores the specified element if either storing is required or if there exist
+	 * elements which have not been forwarded yet
+	 *
+	 * @param element the element to store
+	 * @param isStoreRequired {@code true} if the element cannot be forwarded at
+	 *            the moment
+	 * @param timeoutInMillis the maximum time to wait for room in a full outbox if
+	 *            the overflow policy is {@link OverflowPolicy#BLOCK}
+	 * @return {@code true} if the outbox has taken over the element (the element
+	 *         is either stored or dropped), otherwise {@code false} if the element
+	 *         can be forwarded directly by the caller
+	 * @throws InterruptedException if the thread gets interrupted while waiting
+	 *             for room in a full outbox
+	 */
+	public boolean offer(final T element, final boolean isStoreRequired, final long timeoutInMillis)
+			throws InterruptedException {
+		requireNonNull(element, "'element' must not be null");
+
+		T dropped = null;
+		lock.lock();
+		try {
+			if (!isStoreRequired && !isDraining && elements.isEmpty()) {
+				return false;
+			}
+			if (elements.size() >= capacity) {
+				switch (policy) {
+				case DROP_OLDEST:
+					dropped = elements.poll();
+					break;
+				case DROP_NEWEST:
+					dropped = element;
+					return true;
+				case BLOCK:
+				default:
+					long nanos = MILLISECONDS.toNanos(timeoutInMillis);
+					while (elements.size() >= capacity) {
+						if (nanos <= 0L) {
+							dropped = element;
+							return true;
+						}
+						nanos = notFull.awaitNanos(nanos);
+					}
+					break;
+				}
+			}
+			elements.add(element);
+			return true;
+		} finally {
+			lock.unlock();
+			// the handler is notified outside of the lock
+			if (dropped != null) {
+				dropHandler.accept(dropped);
+			}
+		}
+	}
+
+	/**
+	 * Forwards all the stored elements in order as long as the specified condition
+	 * holds. If another thread is already draining the outbox, this method returns
+	 * immediately.
+	 *
+	 * @param canForward the condition to check before forwarding every element
+	 * @param forwarder the consumer forwarding the elements
+	 */
+	public void drain(final BooleanSupplier canForward, final Consumer<? super T> forwarder) {
+		lock.lock();
+		try {
+			if (isDraining) {
+				return;
+			}
+			isDraining = true;
+		} finally {
+			lock.unlock();
+		}
+		while (true) {
+			final T element;
+			lock.lock();
+			try {
+				element = canForward.getAsBoolean() ? elements.poll() : null;
+				if (element == null) {
+					isDraining = false;
+					return;
+				}
+				notFull.signal();
+			} finally {
+				lock.unlock();
+			}
+			forwarder.accept(element);
+		}
+	}
+
+	/**
+	 * Drops all the stored elements
+	 */
+	public void clear() {
+		final List<T> dropped;
+		lock.lock();
+		try {
+			dropped = new ArrayList<>(elements);
+			elements.clear();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		dropped.forEach(dropHandler);
+	}
+
+	/**
+	 * Returns the number of stored elements
+	 *
+	 * @return the number of stored elements
+	 */
+	public int size() {
+		lock.lock();
+		try {
+			return elements.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+}
@@ -0,0 +1,298 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider.helper;
+
+import static java.util.Objects.requireNonNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import com.hivemq.client.mqtt.mqtt5.datatypes.Mqtt5UserProperties;
+import com.hivemq.client.mqtt.mqtt5.datatypes.Mqtt5UserPropertiesBuilder;
+import com.hivemq.client.mqtt.mqtt5.datatypes.Mqtt5UserProperty;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+
+/**
+ * Splits large publish requests into sequenced chunks and reassembles the
+ * received chunks. Every chunk carries the following user properties:
+ *
+ * <ul>
+ * <li>{@value #CHUNK_ID} - the identifier of the chunked transfer
+ * <li>{@value #CHUNK_INDEX} - the zero-based index of the chunk
+ * <li>{@value #CHUNK_COUNT} - the total number of chunks
+ * <li>{@value #CHUNK_TOTAL_SIZE} - the size of the complete payload in bytes
+ * </ul>
+ *
+ * The memory used for the reassembly is bounded by the maximum size of a single
+ * transfer and the maximum size of all the incomplete transfers. Incomplete
+ * transfers are discarded once they have not received any chunk within the
+ * timeout.
+ */
+public final class ChunkAssembler {
+
+	public static final String CHUNK_ID = "mqtt.chunk.id";
+	public static final String CHUNK_INDEX = "mqtt.chunk.index";
+	public static final String CHUNK_COUNT = "mqtt.chunk.count";
+	public static final String CHUNK_TOTAL_SIZE = "mqtt.chunk.totalSize";
+
+	private final long maxTransferSize;
+	private final long maxBufferedSize;
+	private final long timeoutInMillis;
+	private final LongSupplier clock;
+
+	/** guarded by this */
+	private final Map<String, Transfer> transfers = new HashMap<>();
+
+	/** guarded by this */
+	private long bufferedSize;
+
+	/**
+	 * Creates a new assembler
+	 *
+	 * @param maxTransferSize the maximum size of a reassembled payload in bytes
+	 * @param maxBufferedSize the maximum size of all incomplete transfers in bytes
+	 * @param timeoutInMillis the time after which an incomplete transfer without
+	 *            any new chunk is discarded
+	 */
+	public ChunkAssembler(final long maxTransferSize, final long maxBufferedSize, final long timeoutInMillis) {
+		this(maxTransferSize, maxBufferedSize, timeoutInMillis, System::currentTimeMillis);
+	}
+
+	public ChunkAssembler(final long maxTransferSize, final long maxBufferedSize, final long timeoutInMillis,
+			final LongSupplier clock) {
+		this.maxTransferSize = maxTransferSize;
+		this.maxBufferedSize = maxBufferedSize;
+		this.timeoutInMillis = timeoutInMillis;
+		this.clock = requireNonNull(clock, "'clock' must not be null");
+	}
+
+	/**
+	 * Splits the payload of the specified publish request into chunks of at most
+	 * the specified size
+	 *
+	 * @param publish the publish request
+	 * @param chunkSize the maximum size of a chunk in bytes
+	 * @param transferId the identifier of the chunked transfer
+	 * @return the chunks in order
+	 */
+	public static List<Mqtt5Publish> split(final Mqtt5Publish publish, final int chunkSize, final String transferId) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Chunk size must be positive");
+		}
+		final byte[] payload = publish.getPayloadAsBytes();
+		final int count = Math.max(1, (payload.length + chunkSize - 1) / chunkSize);
+		final List<Mqtt5Publish> chunks = new ArrayList<>(count);
+		for (int index = 0; index < count; index++) {
+			final int offset = index * chunkSize;
+			final int length = Math.min(chunkSize, payload.length - offset);
+
+			final Mqtt5UserPropertiesBuilder properties = Mqtt5UserProperties.builder();
+			publish.getUserProperties().asList().forEach(properties::add);
+			properties.add(CHUNK_ID, transferId);
+			properties.add(CHUNK_INDEX, String.valueOf(index));
+			properties.add(CHUNK_COUNT, String.valueOf(count));
+			properties.add(CHUNK_TOTAL_SIZE, String.valueOf(payload.length));
+
+			// @formatter:off
+			chunks.add(publish.extend()
+			                  .payload(ByteBuffer.wrap(payload, offset, length).slice())
+			                  .userProperties(properties.build())
+			                  .build());
+			// @formatter:on
+		}
+		return chunks;
+	}
+
+	/**
+	 * Checks whether the specified publish request is a chunk
+	 *
+	 * @param publish the publish request
+	 * @return {@code true} if it is a chunk, otherwise {@code false}
+	 */
+	public static boolean isChunk(final Mqtt5Publish publish) {
+		for (final Mqtt5UserProperty property : publish.getUserProperties().asList()) {
+			if (CHUNK_ID.equals(property.getName().toString())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the specified chunk to its transfer
+	 *
+	 * @param chunk the chunk
+	 * @return the reassembled publish request if the chunk completes its transfer,
+	 *         otherwise {@code null}
+	 * @throws IllegalArgumentException if the chunk is malformed or exceeds the
+	 *             memory bounds
+	 */
+	public synchronized Mqtt5Publish add(final Mqtt5Publish chunk) {
+		final long now = clock.getAsLong();
+		expire(now);
+
+		final Mqtt5UserPropertiesBuilder properties = Mqtt5UserProperties.builder();
+		String id = null;
+		int index = -1;
+		int count = -1;
+		long totalSize = -1;
+		for (final Mqtt5UserProperty property : chunk.getUserProperties().asList()) {
+			final String name = property.getName().toString();
+			final String value = property.getValue().toString();
+			try {
+				switch (name) {
+					case CHUNK_ID:
+						id = value;
+						break;
+					case CHUNK_INDEX:
+						index = Integer.parseInt(value);
+						break;
+					case CHUNK_COUNT:
+						count = Integer.parseInt(value);
+						break;
+					case CHUNK_TOTAL_SIZE:
+						totalSize = Long.parseLong(value);
+						break;
+					default:
+						properties.add(property);
+						break;
+				}
+			} catch (final NumberFormatException e) {
+				throw new IllegalArgumentException("Malformed chunk header '" + name + "': " + value);
+			}
+		}
+		// every chunk but the one of an empty payload carries at least one byte
+		if (id == null || count <= 0 || index < 0 || index >= count || totalSize < 0
+				|| count > Math.max(1, totalSize)) {
+			throw new IllegalArgumentException("Malformed chunk of transfer '" + id + "'");
+		}
+		if (totalSize > maxTransferSize) {
+			throw new IllegalArgumentException(
+					"Chunked transfer '" + id + "' of " + totalSize + " bytes exceeds the maximum of " + maxTransferSize);
+		}
+		Transfer transfer = transfers.get(id);
+		if (transfer == null) {
+			if (bufferedSize + totalSize > maxBufferedSize) {
+				throw new IllegalArgumentException("Chunked transfer '" + id + "' of " + totalSize
+						+ " bytes exceeds the available reassembly buffer");
+			}
+			transfer = new Transfer(count, totalSize);
+			transfers.put(id, transfer);
+			bufferedSize += totalSize;
+		} else if (transfer.chunks.length != count || transfer.totalSize != totalSize) {
+			discard(id);
+			throw new IllegalArgumentException("Chunk does not match its transfer '" + id + "'");
+		}
+		transfer.lastChunkTime = now;
+		if (transfer.received.get(index)) {
+			// redelivered chunk
+			return null;
+		}
+		transfer.chunks[index] = chunk.getPayloadAsBytes();
+		transfer.received.set(index);
+		transfer.receivedSize += transfer.chunks[index].length;
+		if (transfer.receivedSize > totalSize) {
+			discard(id);
+			throw new IllegalArgumentException("Chunks of transfer '" + id + "' exceed the announced size");
+		}
+		if (transfer.received.cardinality() < count) {
+			return null;
+		}
+		discard(id);
+
+		final ByteBuffer payload = ByteBuffer.allocate((int) transfer.receivedSize);
+		for (final byte[] data : transfer.chunks) {
+			payload.put(data);
+		}
+		payload.flip();
+		// @formatter:off
+		return chunk.extend()
+		            .payload(payload)
+		            .userProperties(properties.build())
+		            .build();
+		// @formatter:on
+	}
+
+	/**
+	 * Returns the number of incomplete transfers
+	 *
+	 * @return the number of incomplete transfers
+	 */
+	public synchronized int pendingTransfers() {
+		return transfers.size();
+	}
+
+	/**
+	 * Discards the incomplete transfers that have not received any chunk within
+	 * the timeout. Stale transfers are also discarded whenever a chunk is added,
+	 * but a transfer on a quiet topic only gets discarded by this sweep.
+	 *
+	 * @return the number of discarded transfers
+	 */
+	public synchronized int expire() {
+		final int pending = transfers.size();
+		expire(clock.getAsLong());
+		return pending - transfers.size();
+	}
+
+	/**
+	 * Discards all incomplete transfers
+	 */
+	public synchronized void clear() {
+		transfers.clear();
+		bufferedSize = 0;
+	}
+
+	private void expire(final long now) {
+		final Iterator<Transfer> iterator = transfers.values().iterator();
+		while (iterator.hasNext()) {
+			final Transfer transfer = iterator.next();
+			if (now - transfer.lastChunkTime >= timeoutInMillis) {
+				iterator.remove();
+				bufferedSize -= transfer.totalSize;
+			}
+		}
+	}
+
+	private void discard(final String id) {
+		final Transfer transfer = transfers.remove(id);
+		if (transfer != null) {
+			bufferedSize -= transfer.totalSize;
+		}
+	}
+
+	private static final class Transfer {
+
+		final byte[][] chunks;
+		final BitSet received;
+		final long totalSize;
+		long receivedSize;
+		long lastChunkTime;
+
+		Transfer(final int count, final long totalSize) {
+			this.chunks = new byte[count][];
+			this.received = new BitSet(count);
+			this.totalSize = totalSize;
+		}
+	}
+
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider.helper;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import in.bytehue.messaging.mqtt5.api.MqttMessageCorrelationIdGenerator;
+
+/**
+ * The correlation identifier generator used if no generator service has been
+ * specified. The identifiers are composed of a random prefix which is created
+ * once per generator instance and a sequence number.
+ *
+ * <p>
+ * To avoid contention between concurrent producers, every thread reserves a
+ * block of sequence numbers from a shared counter and hands out the numbers of
+ * its block without any synchronization.
+ */
+public final class DefaultCorrelationIdGenerator implements MqttMessageCorrelationIdGenerator {
+
+	private static final int BLOCK_SIZE = 1024;
+
+	private final String prefix;
+	private final AtomicLong nextBlock = new AtomicLong();
+
+	/** the next sequence number and the (exclusive) end of the reserved block */
+	private final ThreadLocal<long[]> block = ThreadLocal.withInitial(() -> new long[2]);
+
+	public DefaultCorrelationIdGenerator() {
+		prefix = UUID.randomUUID().toString() + "-";
+	}
+
+	@Override
+	public String generate() {
+		final long[] range = block.get();
+		if (range[0] == range[1]) {
+			range[0] = nextBlock.getAndIncrement() * BLOCK_SIZE;
+			range[1] = range[0] + BLOCK_SIZE;
+		}
+		return prefix + Long.toHexString(range[0]++);
+	}
+
+}
@@ -17,13 +17,10 @@ package in.bytehue.messaging.mqtt5.provider.helper;
 
 import static com.hivemq.client.mqtt.datatypes.MqttQos.EXACTLY_ONCE;
 import static com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish.DEFAULT_QOS;
-import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.RETAIN;
-import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.USER_PROPERTIES;
 import static java.lang.System.lineSeparator;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Comparator.comparingLong;
 import static java.util.Objects.requireNonNull;
-import static java.util.stream.Collectors.toMap;
 import static org.osgi.framework.Constants.SERVICE_ID;
 import static org.osgi.framework.Constants.SERVICE_RANKING;
 import static org.osgi.service.messaging.Features.EXTENSION_GUARANTEED_DELIVERY;
@@ -39,7 +36,6 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -62,21 +58,21 @@ import org.osgi.util.converter.TypeReference;
 import com.hivemq.client.internal.mqtt.datatypes.MqttTopicImpl;
 import com.hivemq.client.internal.mqtt.datatypes.MqttUserPropertiesImpl;
 import com.hivemq.client.internal.mqtt.datatypes.MqttUtf8StringImpl;
-import com.hivemq.client.internal.mqtt.message.publish.MqttPublish;
 import com.hivemq.client.internal.mqtt.message.publish.MqttWillPublish;
 import com.hivemq.client.mqtt.datatypes.MqttQos;
-import com.hivemq.client.mqtt.datatypes.MqttTopic;
 import com.hivemq.client.mqtt.datatypes.MqttUtf8String;
 import com.hivemq.client.mqtt.mqtt5.datatypes.Mqtt5UserProperties;
 import com.hivemq.client.mqtt.mqtt5.datatypes.Mqtt5UserPropertiesBuilder;
 import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5PayloadFormatIndicator;
 import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
 
-import in.bytehue.messaging.mqtt5.api.MqttMessageCorrelationIdGenerator;
+import in.bytehue.messaging.mqtt5.provider.LazyMessageProvider;
 import in.bytehue.messaging.mqtt5.provider.MessageContextProvider;
 
 public final class MessageHelper {
 
+	private static final String SHARED_SUBSCRIPTION_PREFIX = "$share/";
+
 	private MessageHelper() {
 		throw new IllegalAccessError("Non-instantiable");
 	}
@@ -95,6 +91,7 @@ public final class MessageHelper {
                              .findFirst()
                              .map(context::getService)
                              .orElseThrow(() -> new RuntimeException("'" + clazz +"' service instance cannot be found"));
+            // @formatter:on
         } catch (final Exception e) {
             throw new RuntimeException("Service '" + clazz.getName() + "' cannot be retrieved", e);
         }
@@ -113,49 +110,17 @@ public final class MessageHelper {
         }
     }
 
-    public static Message toMessage(
-            final Mqtt5Publish publish,
-            final MessageContext context,
-            final MessageContextBuilder messageContextBuilder) {
-
-        final MqttPublish pub = (MqttPublish) publish;
-        final ByteBuffer payload = pub.getRawPayload();
-        final String contentEncoding = publish
-                                            .getPayloadFormatIndicator()
-                                            .map(e -> e.name().toLowerCase())
-                                            .orElse(null);
-
-        final String contentType = publish.getContentType().map(MessageHelper::asString).orElse(null);
-        final String channel = publish.getTopic().toString();
-        final String replyToChannel = publish.getResponseTopic().map(MqttTopic::toString).orElse(null);
-        final String correlationId = asString(pub.getRawCorrelationData());
-        final int qos = publish.getQos().getCode();
-        final boolean retain = publish.isRetain();
-        final Mqtt5UserProperties properties = publish.getUserProperties();
-
-        final Map<String, String> userProperties =  properties
-                                                        .asList()
-                                                        .stream()
-                                                        .collect(toMap(
-                                                                    e -> e.getName().toString(),
-                                                                    e -> e.getValue().toString()));
-
-        final Map<String, Object> extensions = new HashMap<>(context.getExtensions());
-        extensions.put(EXTENSION_QOS, qos);
-        extensions.put(RETAIN, retain);
-        extensions.put(USER_PROPERTIES, userProperties);
-
-        return messageContextBuilder.channel(channel)
-                                    .content(payload != null
-                                                        ? payload
-                                                        : ByteBuffer.wrap("".getBytes()))
-                                    .contentType(contentType)
-                                    .replyTo(replyToChannel)
-                                    .contentEncoding(contentEncoding)
-                                    .correlationId(correlationId)
-                                    .extensions(extensions)
-                                    .buildMessage();
-        // @formatter:on
+    public static Message toMessage(final Mqtt5Publish publish, final MessageContext subscriptionContext) {
+        return new LazyMessageProvider(publish, subscriptionContext);
+    }
+
+    public static Message toMessage(final Mqtt5Publish publish, final MessageContext subscriptionContext, final Runnable settlement) {
+        return new LazyMessageProvider(publish, subscriptionContext, settlement);
+    }
+
+    public static Message toMessage(final Mqtt5Publish publish, final MessageContext subscriptionContext, final Runnable settlement,
+            final long maxPayloadSize) {
+        return new LazyMessageProvider(publish, subscriptionContext, settlement, maxPayloadSize);
 	}
 
 	public static <T> ServiceReferenceDTO toServiceReferenceDTO(final Class<T> clazz, final BundleContext context) {
@@ -368,9 +333,45 @@ public final class MessageHelper {
 		if (prefix == null || prefix.trim().isEmpty()) {
 			return topic;
 		}
+		// the prefix belongs to the topic filter and not in front of the share name
+		if (isSharedSubscription(topic)) {
+			final int filterStart = topic.indexOf('/', SHARED_SUBSCRIPTION_PREFIX.length()) + 1;
+			if (filterStart > 0) {
+				return topic.substring(0, filterStart) + prefix + "/" + topic.substring(filterStart);
+			}
+		}
 		return prefix + "/" + topic;
 	}
 
+	/**
+	 * Checks whether the specified topic filter denotes a shared subscription,
+	 * i.e. {@code $share/<group>/<filter>}
+	 */
+	public static boolean isSharedSubscription(final String topicFilter) {
+		return topicFilter != null && topicFilter.startsWith(SHARED_SUBSCRIPTION_PREFIX);
+	}
+
+	/**
+	 * Returns the topic filter of the shared subscription of the specified group
+	 * or the specified topic filter as is if no group is specified
+	 *
+	 * @throws IllegalArgumentException if the group contains {@code /}, {@code +}
+	 *             or {@code #}, or the topic filter already denotes a shared
+	 *             subscription
+	 */
+	public static String toSharedSubscription(final String group, final String topicFilter) {
+		if (group == null || group.trim().isEmpty()) {
+			return topicFilter;
+		}
+		if (group.indexOf('/') != -1 || group.indexOf('+') != -1 || group.indexOf('#') != -1) {
+			throw new IllegalArgumentException("Share name '" + group + "' must not contain '/', '+' or '#'");
+		}
+		if (isSharedSubscription(topicFilter)) {
+			throw new IllegalArgumentException("Topic filter '" + topicFilter + "' is already shared");
+		}
+		return SHARED_SUBSCRIPTION_PREFIX + group + "/" + topicFilter;
+	}
+
 	public static <A, B> B setIfNotNull(final A a, final Function<A, B> function) {
 		return a == null ? null : function.apply(a);
 	}
@@ -394,32 +395,4 @@ public final class MessageHelper {
 		return new String(buffer.array(), UTF_8);
 	}
 
-	// @formatter:off
-    public static String getCorrelationId(
-            final MessageContextProvider messageContext,
-            final BundleContext bundleContext,
-            final Logger logger) {
-
-        final String predefinedCorrelationId = messageContext.getCorrelationId();
-        if (predefinedCorrelationId != null) {
-            return predefinedCorrelationId;
-        }
-        final String correlationIdGenerator = messageContext.correlationIdGenerator;
-        if (correlationIdGenerator == null) {
-            return UUID.randomUUID().toString();
-        }
-        final Optional<MqttMessageCorrelationIdGenerator> service =
-                getOptionalService(MqttMessageCorrelationIdGenerator.class,
-                                   correlationIdGenerator,
-                                   bundleContext,
-                                   logger);
-        if (service.isPresent()) {
-            final String generatedId = service.get().generate();
-            requireNonNull(generatedId, "'MqttMessageCorrelationIdGenerator' (filter: " + correlationIdGenerator  + " returned 'null' value");
-            return generatedId;
-        }
-        return UUID.randomUUID().toString();
-    }
-    // @formatter:on
-
 }
@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider.helper;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.jctools.queues.MpscArrayQueue;
+import org.osgi.util.promise.Deferred;
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.PromiseFactory;
+import org.osgi.util.pushstream.PushEvent;
+import org.osgi.util.pushstream.PushEventConsumer;
+import org.osgi.util.pushstream.SimplePushEventSource;
+
+/**
+ * A {@link SimplePushEventSource} that hashes the published events by their
+ * keys onto a fixed number of lanes. Every lane is backed by a bounded
+ * lock-free multi-producer single-consumer queue and is drained by at most one
+ * task of the executor at a time. Hence, the events of the same key are
+ * delivered in order whereas the events of different keys are delivered in
+ * parallel.
+ *
+ * <p>
+ * The publisher is never blocked as it is usually a thread of the MQTT client.
+ * Hence, an event that does not fit into its full lane is handed over to the
+ * overflow handler instead. Terminal events are delivered immediately such that
+ * the events still queued in the lanes are discarded.
+ */
+public final class PartitionedPushEventSource<T> implements SimplePushEventSource<T> {
+
+	/** the number of events a lane holds if no capacity has been specified */
+	public static final int DEFAULT_LANE_CAPACITY = 1_024;
+
+	/** the maximum number of events a lane delivers before yielding its thread */
+	private static final int DRAIN_BATCH_SIZE = 256;
+
+	private final List<Lane> lanes;
+	private final Executor executor;
+	private final Function<? super T, ?> keyFunction;
+	private final PromiseFactory promiseFactory;
+	private final Consumer<? super T> overflowHandler;
+	private final Runnable closeAction;
+
+	private final List<PushEventConsumer<? super T>> consumers = new CopyOnWriteArrayList<>();
+	private final AtomicBoolean isClosed = new AtomicBoolean();
+
+	/** guarded by this */
+	private Deferred<Void> connected;
+
+	/**
+	 * Creates a new partitioned event source
+	 *
+	 * @param partitions the number of lanes
+	 * @param laneCapacity the maximum number of events queued in a lane
+	 * @param keyFunction the function to extract the key of an event
+	 * @param executor the executor to drain the lanes
+	 * @param promiseFactory the factory to create the connect promises with
+	 * @param overflowHandler the handler of the events that do not fit into their
+	 *            full lanes
+	 * @param closeAction the action to perform after the source has been closed
+	 */
+	public PartitionedPushEventSource(final int partitions, final int laneCapacity,
+			final Function<? super T, ?> keyFunction, final Executor executor, final PromiseFactory promiseFactory,
+			final Consumer<? super T> overflowHandler, final Runnable closeAction) {
+		if (partitions <= 0) {
+			throw new IllegalArgumentException("Number of partitions must be positive");
+		}
+		if (laneCapacity <= 0) {
+			throw new IllegalArgumentException("Capacity of a lane must be positive");
+		}
+		this.keyFunction = requireNonNull(keyFunction, "'keyFunction' must not be null");
+		this.executor = requireNonNull(executor, "'executor' must not be null");
+		this.promiseFactory = requireNonNull(promiseFactory, "'promiseFactory' must not be null");
+		this.overflowHandler = requireNonNull(overflowHandler, "'overflowHandler' must not be null");
+		this.closeAction = requireNonNull(closeAction, "'closeAction' must not be null");
+
+		connected = promiseFactory.deferred();
+		lanes = new ArrayList<>(partitions);
+		for (int i = 0; i < partitions; i++) {
+			lanes.add(new Lane(laneCapacity));
+		}
+	}
+
+	@Override
+	public AutoCloseable open(final PushEventConsumer<? super T> consumer) {
+		requireNonNull(consumer, "'consumer' must not be null");
+		if (isClosed.get()) {
+			throw new IllegalStateException("Event source is closed");
+		}
+		consumers.add(consumer);
+		synchronized (this) {
+			connected.resolve(null);
+		}
+		return () -> {
+			if (consumers.remove(consumer)) {
+				deliverTerminal(consumer, PushEvent.close());
+			}
+		};
+	}
+
+	@Override
+	public void publish(final T event) {
+		if (isClosed.get()) {
+			throw new IllegalStateException("Event source is closed");
+		}
+		final Object key = keyFunction.apply(event);
+		final Lane lane = lanes.get(index(key == null ? 0 : key.hashCode()));
+		if (!lane.queue.offer(PushEvent.data(event))) {
+			overflowHandler.accept(event);
+		}
+		lane.schedule();
+	}
+
+	@Override
+	public void endOfStream() {
+		terminate(PushEvent.close());
+	}
+
+	@Override
+	public void error(final Throwable t) {
+		terminate(PushEvent.error(t));
+	}
+
+	@Override
+	public void close() {
+		if (!isClosed.getAndSet(true)) {
+			for (final PushEventConsumer<? super T> consumer : consumers) {
+				deliverTerminal(consumer, PushEvent.close());
+			}
+			consumers.clear();
+			closeAction.run();
+		}
+	}
+
+	@Override
+	public boolean isConnected() {
+		return !consumers.isEmpty();
+	}
+
+	@Override
+	public synchronized Promise<Void> connectPromise() {
+		if (connected.getPromise().isDone() && consumers.isEmpty()) {
+			connected = promiseFactory.deferred();
+		}
+		return connected.getPromise();
+	}
+
+	private void terminate(final PushEvent<T> event) {
+		for (final PushEventConsumer<? super T> consumer : consumers) {
+			if (consumers.remove(consumer)) {
+				deliverTerminal(consumer, event);
+			}
+		}
+	}
+
+	private void deliver(final PushEvent<? extends T> event) {
+		for (final PushEventConsumer<? super T> consumer : consumers) {
+			try {
+				if (consumer.accept(event) < 0) {
+					// the consumer does not want to receive any further event
+					consumers.remove(consumer);
+				}
+			} catch (final Exception e) {
+				consumers.remove(consumer);
+			}
+		}
+	}
+
+	private void deliverTerminal(final PushEventConsumer<? super T> consumer, final PushEvent<? extends T> event) {
+		try {
+			consumer.accept(event);
+		} catch (final Exception e) {
+			// the consumer is not connected anymore
+		}
+	}
+
+	private int index(final int hash) {
+		// spread the higher bits as keys often differ only in their suffixes
+		final int h = hash ^ hash >>> 16;
+		return (h & Integer.MAX_VALUE) % lanes.size();
+	}
+
+	private final class Lane implements Runnable {
+
+		final MpscArrayQueue<PushEvent<? extends T>> queue;
+		final AtomicBoolean isScheduled = new AtomicBoolean();
+
+		Lane(final int capacity) {
+			// the queue rounds the capacity up to the next power of two
+			queue = new MpscArrayQueue<>(Math.max(2, capacity));
+		}
+
+		void schedule() {
+			if (isScheduled.compareAndSet(false, true)) {
+				try {
+					executor.execute(this);
+				} catch (final RuntimeException e) {
+					// the executor has been shut down
+					isScheduled.set(false);
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			PushEvent<? extends T> event;
+			int delivered = 0;
+			while (delivered < DRAIN_BATCH_SIZE && !isClosed.get() && (event = queue.relaxedPoll()) != null) {
+				deliver(event);
+				delivered++;
+			}
+			isScheduled.set(false);
+			// events might have been offered after the last poll
+			if (!isClosed.get() && !queue.isEmpty()) {
+				schedule();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses and decompresses payloads using the {@code GZIP} or the
+ * {@code DEFLATE} (zlib) format. The compression algorithm of a payload is
+ * announced using the {@value #CONTENT_ENCODING} user property.
+ *
+ * <p>
+ * The {@link Deflater} and {@link Inflater} instances hold native memory and
+ * are therefore pooled instead of being created for every payload. The size
+ * of a decompressed payload is always bounded, as a small compressed payload
+ * can expand to an arbitrarily large one.
+ */
+public final class PayloadCodec {
+
+	/** the user property announcing the compression algorithm of a payload */
+	public static final String CONTENT_ENCODING = "content-encoding";
+
+	/** the default maximum size of a decompressed payload in bytes */
+	public static final long DEFAULT_MAX_DECOMPRESSED_SIZE = 16_777_216L;
+
+	public enum Algorithm {
+		NONE,
+		GZIP,
+		DEFLATE;
+
+		public String encoding() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+
+		/**
+		 * Returns the algorithm of the specified encoding
+		 *
+		 * @param encoding the encoding (can be {@code null})
+		 * @return the algorithm or {@code null} if the encoding is unknown
+		 */
+		public static Algorithm of(final String encoding) {
+			if (encoding == null || encoding.isEmpty()) {
+				return NONE;
+			}
+			for (final Algorithm algorithm : values()) {
+				if (algorithm.encoding().equalsIgnoreCase(encoding.trim())) {
+					return algorithm;
+				}
+			}
+			return null;
+		}
+	}
+
+	private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+	private static final int BUFFER_SIZE = 8_192;
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	private static final int GZIP_MAGIC = 0x8b1f;
+	private static final int GZIP_TRAILER_SIZE = 8;
+
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+
+	// @formatter:off
+	private static final byte[] GZIP_HEADER = {
+			(byte) GZIP_MAGIC,       // magic number (low byte)
+			(byte) (GZIP_MAGIC >> 8), // magic number (high byte)
+			Deflater.DEFLATED,       // compression method
+			0,                       // flags
+			0, 0, 0, 0,              // modification time
+			0,                       // extra flags
+			(byte) 0xff              // operating system (unknown)
+	};
+	// @formatter:on
+
+	/** raw deflaters and inflaters for GZIP, zlib ones for DEFLATE */
+	private static final Queue<Deflater> RAW_DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+	private static final Queue<Deflater> ZLIB_DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+	private static final Queue<Inflater> RAW_INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+	private static final Queue<Inflater> ZLIB_INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+	/**
+	 * Non-instantiable
+	 */
+	private PayloadCodec() {
+		throw new IllegalAccessError("Non-instantiable");
+	}
+
+	/**
+	 * Compresses the specified data
+	 *
+	 * @param data the data to compress
+	 * @param algorithm the compression algorithm
+	 * @return the compressed data
+	 */
+	public static byte[] compress(final byte[] data, final Algorithm algorithm) {
+		switch (algorithm) {
+			case GZIP:
+				final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 32);
+				out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+				deflate(data, RAW_DEFLATERS, true, out);
+
+				final CRC32 crc = new CRC32();
+				crc.update(data, 0, data.length);
+				writeIntLE(out, (int) crc.getValue());
+				writeIntLE(out, data.length);
+				return out.toByteArray();
+			case DEFLATE:
+				final ByteArrayOutputStream zlib = new ByteArrayOutputStream(data.length / 2 + 16);
+				deflate(data, ZLIB_DEFLATERS, false, zlib);
+				return zlib.toByteArray();
+			default:
+				return data;
+		}
+	}
+
+	/**
+	 * Decompresses the specified data
+	 *
+	 * @param data the compressed data
+	 * @param algorithm the compression algorithm
+	 * @param maxSize the maximum size of the decompressed data in bytes
+	 * @return the decompressed data
+	 * @throws IllegalArgumentException if the data is not compressed using the
+	 *             specified algorithm
+	 * @throws IllegalStateException if the decompressed data exceeds the
+	 *             maximum size
+	 */
+	public static byte[] decompress(final byte[] data, final Algorithm algorithm, final long maxSize) {
+		final int limit = (int) Math.max(0, Math.min(maxSize, MAX_ARRAY_SIZE));
+		try {
+			switch (algorithm) {
+				case GZIP:
+					return gunzip(data, limit);
+				case DEFLATE:
+					return inflate(data, 0, data.length, ZLIB_INFLATERS, false, data.length * 4L, limit);
+				default:
+					return data;
+			}
+		} catch (final DataFormatException e) {
+			throw new IllegalArgumentException("Payload is not compressed using " + algorithm, e);
+		}
+	}
+
+	private static byte[] gunzip(final byte[] data, final int maxSize) throws DataFormatException {
+		if (data.length < GZIP_HEADER.length + GZIP_TRAILER_SIZE || readShortLE(data, 0) != GZIP_MAGIC
+				|| data[2] != Deflater.DEFLATED) {
+			throw new DataFormatException("Invalid GZIP header");
+		}
+		final int flags = data[3];
+		int offset = GZIP_HEADER.length;
+		if ((flags & FEXTRA) != 0) {
+			offset += 2 + readShortLE(data, offset);
+		}
+		if ((flags & FNAME) != 0) {
+			offset = skipZeroTerminated(data, offset);
+		}
+		if ((flags & FCOMMENT) != 0) {
+			offset = skipZeroTerminated(data, offset);
+		}
+		if ((flags & FHCRC) != 0) {
+			offset += 2;
+		}
+		final int end = data.length - GZIP_TRAILER_SIZE;
+		if (offset > end) {
+			throw new DataFormatException("Invalid GZIP header");
+		}
+		final int size = readIntLE(data, end + 4);
+		if (Integer.toUnsignedLong(size) > maxSize) {
+			throw exceedsMaxSize(maxSize);
+		}
+		final byte[] result = inflate(data, offset, end - offset, RAW_INFLATERS, true, size, maxSize);
+
+		final CRC32 crc = new CRC32();
+		crc.update(result, 0, result.length);
+		if ((int) crc.getValue() != readIntLE(data, end) || result.length != size) {
+			throw new DataFormatException("Corrupt GZIP trailer");
+		}
+		return result;
+	}
+
+	private static void deflate(final byte[] data, final Queue<Deflater> pool, final boolean nowrap,
+			final ByteArrayOutputStream out) {
+		Deflater deflater = pool.poll();
+		if (deflater == null) {
+			deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+		}
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			while (!deflater.finished()) {
+				final int length = deflater.deflate(buffer);
+				out.write(buffer, 0, length);
+			}
+		} finally {
+			deflater.reset();
+			if (!pool.offer(deflater)) {
+				deflater.end();
+			}
+		}
+	}
+
+	private static byte[] inflate(final byte[] data, final int offset, final int length, final Queue<Inflater> pool,
+			final boolean nowrap, final long sizeHint, final int maxSize) throws DataFormatException {
+		Inflater inflater = pool.poll();
+		if (inflater == null) {
+			inflater = new Inflater(nowrap);
+		}
+		try {
+			inflater.setInput(data, offset, length);
+			// the size hint is only trusted up to a sane bound and one byte more
+			// than the maximum size is enough to detect an oversized payload
+			final long bound = Math.min(length * 64L + 64, maxSize + 1L);
+			byte[] result = new byte[(int) Math.max(64, Math.min(sizeHint, bound))];
+			int size = 0;
+			while (!inflater.finished()) {
+				if (size == result.length) {
+					if (size > maxSize) {
+						throw exceedsMaxSize(maxSize);
+					}
+					result = Arrays.copyOf(result, (int) Math.min(result.length * 2L, maxSize + 1L));
+				}
+				final int inflated = inflater.inflate(result, size, result.length - size);
+				if (inflated == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new DataFormatException("Truncated compressed data");
+				}
+				size += inflated;
+			}
+			if (size > maxSize) {
+				throw exceedsMaxSize(maxSize);
+			}
+			return size == result.length ? result : Arrays.copyOf(result, size);
+		} finally {
+			inflater.reset();
+			if (!pool.offer(inflater)) {
+				inflater.end();
+			}
+		}
+	}
+
+	private static IllegalStateException exceedsMaxSize(final int maxSize) {
+		return new IllegalStateException("Decompressed payload exceeds the maximum size of " + maxSize + " bytes");
+	}
+
+	private static int skipZeroTerminated(final byte[] data, int offset) {
+		while (offset < data.length && data[offset] != 0) {
+			offset++;
+		}
+		return offset + 1;
+	}
+
+	private static int readShortLE(final byte[] data, final int offset) {
+		return data[offset] & 0xff | (data[offset + 1] & 0xff) << 8;
+	}
+
+	private static int readIntLE(final byte[] data, final int offset) {
+		return readShortLE(data, offset) | readShortLE(data, offset + 2) << 16;
+	}
+
+	private static void writeIntLE(final ByteArrayOutputStream out, final int value) {
+		out.write(value);
+		out.write(value >>> 8);
+		out.write(value >>> 16);
+		out.write(value >>> 24);
+	}
+
+}
@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider.helper;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of entries stored in memory-mapped segment files. Every
+ * appended entry remains pending until it gets acknowledged. Segments whose
+ * entries have all been acknowledged are deleted.
+ *
+ * <p>
+ * A record is laid out as follows:
+ *
+ * <pre>
+ * | length (4) | type (1) | sequence (8) | data (length - 9) | CRC32 (4) |
+ * </pre>
+ *
+ * Acknowledgements are appended as records without data such that a segment
+ * never gets modified in place. On recovery, a segment is read up to the first
+ * incomplete or corrupt record.
+ *
+ * <p>
+ * The mapped buffers are forced to the storage device in groups, i.e. after
+ * the configured number of records or when {@link #sync()} gets invoked.
+ */
+public final class SegmentedLog implements Closeable {
+
+	private static final byte ENTRY = 1;
+	private static final byte ACKNOWLEDGEMENT = 2;
+
+	/** length, type, sequence and checksum */
+	private static final int RECORD_OVERHEAD = 4 + 1 + 8 + 4;
+	private static final String SEGMENT_SUFFIX = ".segment";
+
+	private final File directory;
+	private final int segmentSize;
+	private final int syncBatchSize;
+
+	/** the segments by their (ascending) identifiers */
+	private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+	/** the segments containing the pending entries by the sequences of the entries */
+	private final Map<Long, Segment> pendingEntries = new HashMap<>();
+
+	private Segment active;
+	private long nextSegmentId;
+	private long nextSequence;
+	private int unsyncedRecords;
+
+	/**
+	 * Creates a new log
+	 *
+	 * @param directory the directory to store the segment files in
+	 * @param segmentSize the size of a segment file in bytes
+	 * @param syncBatchSize the number of records after which the active segment
+	 *            gets forced to the storage device
+	 */
+	public SegmentedLog(final File directory, final int segmentSize, final int syncBatchSize) {
+		this.directory = requireNonNull(directory, "'directory' must not be null");
+		this.segmentSize = segmentSize;
+		this.syncBatchSize = syncBatchSize;
+	}
+
+	/**
+	 * Opens the log and hands over all the pending entries in order
+	 *
+	 * @param consumer the consumer of the sequences and the data of the pending
+	 *            entries
+	 * @throws IOException if the segments cannot be read
+	 */
+	public synchronized void open(final BiConsumer<Long, byte[]> consumer) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Directory '" + directory + "' cannot be created");
+		}
+		final File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+		Arrays.sort(files);
+
+		final Map<Long, byte[]> pending = new LinkedHashMap<>();
+		for (final File file : files) {
+			final String name = file.getName();
+			final long id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+			final Segment segment = new Segment(file, (int) file.length());
+			segments.put(id, segment);
+			read(segment, pending);
+			active = segment;
+			nextSegmentId = id + 1;
+		}
+		if (active != null) {
+			// clear the remainder of a torn write such that stale records never get read
+			final MappedByteBuffer buffer = active.buffer;
+			for (int i = buffer.position(); i < buffer.limit(); i++) {
+				buffer.put(i, (byte) 0);
+			}
+		}
+		pendingEntries.values().forEach(s -> s.pending++);
+		pending.forEach(consumer);
+		compact();
+	}
+
+	/**
+	 * Appends the specified entry
+	 *
+	 * @param data the data of the entry
+	 * @return the sequence of the appended entry
+	 * @throws IOException if the entry cannot be written
+	 */
+	public synchronized long append(final byte[] data) throws IOException {
+		final long sequence = nextSequence++;
+		final Segment segment = write(ENTRY, sequence, data);
+		segment.pending++;
+		pendingEntries.put(sequence, segment);
+		return sequence;
+	}
+
+	/**
+	 * Acknowledges the entry with the specified sequence
+	 *
+	 * @param sequence the sequence of the entry
+	 * @throws IOException if the acknowledgement cannot be written
+	 */
+	public synchronized void acknowledge(final long sequence) throws IOException {
+		final Segment segment = pendingEntries.remove(sequence);
+		if (segment == null) {
+			return;
+		}
+		write(ACKNOWLEDGEMENT, sequence, new byte[0]);
+		segment.pending--;
+		compact();
+	}
+
+	/**
+	 * Forces the unsynchronized records to the storage device
+	 */
+	public synchronized void sync() {
+		if (unsyncedRecords > 0 && active != null) {
+			active.buffer.force();
+			unsyncedRecords = 0;
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		sync();
+		segments.clear();
+		pendingEntries.clear();
+		active = null;
+	}
+
+	private Segment write(final byte type, final long sequence, final byte[] data) throws IOException {
+		final int recordSize = RECORD_OVERHEAD + data.length;
+		if (active == null || active.buffer.remaining() < recordSize) {
+			roll(recordSize);
+		}
+		final Segment segment = active;
+		final MappedByteBuffer buffer = segment.buffer;
+		final int start = buffer.position();
+
+		buffer.position(start + 4);
+		buffer.put(type);
+		buffer.putLong(sequence);
+		buffer.put(data);
+		buffer.putInt(checksum(buffer, start + 4, recordSize - 8));
+		// the length is written last such that an incomplete record is never read
+		buffer.putInt(start, recordSize - 8);
+
+		if (++unsyncedRecords >= syncBatchSize) {
+			sync();
+		}
+		return segment;
+	}
+
+	private void roll(final int recordSize) throws IOException {
+		sync();
+		final long id = nextSegmentId++;
+		final File file = new File(directory, String.format("%020d", id) + SEGMENT_SUFFIX);
+		active = new Segment(file, Math.max(segmentSize, recordSize + 4));
+		segments.put(id, active);
+		compact();
+	}
+
+	private void read(final Segment segment, final Map<Long, byte[]> pending) {
+		final MappedByteBuffer buffer = segment.buffer;
+		while (buffer.remaining() >= RECORD_OVERHEAD) {
+			final int start = buffer.position();
+			final int length = buffer.getInt(start);
+			if (length < 9 || length + 8 > buffer.limit() - start) {
+				break;
+			}
+			final int checksum = buffer.getInt(start + 4 + length);
+			if (checksum != checksum(buffer, start + 4, length)) {
+				break;
+			}
+			buffer.position(start + 4);
+			final byte type = buffer.get();
+			final long sequence = buffer.getLong();
+			final byte[] data = new byte[length - 9];
+			buffer.get(data);
+			buffer.position(start + 8 + length);
+
+			if (type == ENTRY) {
+				pending.put(sequence, data);
+				pendingEntries.put(sequence, segment);
+			} else {
+				pending.remove(sequence);
+				pendingEntries.remove(sequence);
+			}
+			nextSequence = Math.max(nextSequence, sequence + 1);
+		}
+	}
+
+	private void compact() {
+		while (segments.size() > 1) {
+			final Segment oldest = segments.firstEntry().getValue();
+			if (oldest == active || oldest.pending > 0) {
+				return;
+			}
+			segments.pollFirstEntry();
+			if (!oldest.file.delete()) {
+				oldest.file.deleteOnExit();
+			}
+		}
+	}
+
+	private static int checksum(final ByteBuffer buffer, final int start, final int length) {
+		final ByteBuffer region = buffer.duplicate();
+		region.limit(start + length).position(start);
+
+		final CRC32 crc = new CRC32();
+		crc.update(region);
+		return (int) crc.getValue();
+	}
+
+	private static final class Segment {
+
+		final File file;
+		final MappedByteBuffer buffer;
+		int pending;
+
+		Segment(final File file, final int size) throws IOException {
+			this.file = file;
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				if (raf.length() < size) {
+					raf.setLength(size);
+				}
+				final FileChannel channel = raf.getChannel();
+				// the mapping remains valid after the channel has been closed
+				buffer = channel.map(READ_WRITE, 0, size);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider.helper;
+
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.PARTITIONS;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.PARTITION_KEY;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.STREAM_BUFFER_SIZE;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.STREAM_EXECUTOR;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.STREAM_PARALLELISM;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.STREAM_PUSHBACK_POLICY;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.STREAM_PUSHBACK_TIME;
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.STREAM_QUEUE_POLICY;
+import static in.bytehue.messaging.mqtt5.provider.helper.MessageHelper.adaptTo;
+import static java.util.Collections.emptyMap;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+
+import org.osgi.util.converter.Converter;
+import org.osgi.util.pushstream.BufferBuilder;
+import org.osgi.util.pushstream.PushEvent;
+import org.osgi.util.pushstream.PushbackPolicyOption;
+import org.osgi.util.pushstream.QueuePolicyOption;
+
+/**
+ * The buffering options of a subscription stream specified as extensions of the
+ * subscription context. The unspecified options retain the defaults of the
+ * {@code PushStreamProvider}.
+ */
+public final class StreamOptions {
+
+	private final Integer bufferSize;
+	private final QueuePolicyOption queuePolicy;
+	private final PushbackPolicyOption pushbackPolicy;
+	private final Long pushbackTime;
+	private final Integer parallelism;
+	private final Executor executor;
+	private final Integer partitions;
+	private final String partitionKey;
+
+	private StreamOptions(final Map<String, Object> extensions, final Converter converter,
+			final Executor defaultExecutor) {
+		bufferSize = adaptTo(extensions.get(STREAM_BUFFER_SIZE), Integer.class, converter);
+		queuePolicy = adaptTo(extensions.get(STREAM_QUEUE_POLICY), QueuePolicyOption.class, converter);
+		pushbackPolicy = adaptTo(extensions.get(STREAM_PUSHBACK_POLICY), PushbackPolicyOption.class, converter);
+		pushbackTime = adaptTo(extensions.get(STREAM_PUSHBACK_TIME), Long.class, converter);
+		parallelism = adaptTo(extensions.get(STREAM_PARALLELISM), Integer.class, converter);
+
+		final Object exec = extensions.get(STREAM_EXECUTOR);
+		if (exec != null && !(exec instanceof Executor)) {
+			throw new IllegalArgumentException("'" + STREAM_EXECUTOR + "' must be an instance of " + Executor.class);
+		}
+		executor = exec != null ? (Executor) exec : defaultExecutor;
+		partitions = adaptTo(extensions.get(PARTITIONS), Integer.class, converter);
+		partitionKey = adaptTo(extensions.get(PARTITION_KEY), String.class, converter);
+	}
+
+	/**
+	 * Reads the stream options from the specified extensions
+	 *
+	 * @param extensions the extensions of the subscription context (can be
+	 *            {@code null})
+	 * @param converter the converter to adapt the values
+	 * @param defaultExecutor the executor to use if none is specified (can be
+	 *            {@code null})
+	 * @return the stream options
+	 */
+	public static StreamOptions of(final Map<String, Object> extensions, final Converter converter,
+			final Executor defaultExecutor) {
+		return new StreamOptions(extensions == null ? emptyMap() : extensions, converter, defaultExecutor);
+	}
+
+	/**
+	 * Checks whether no option has been specified
+	 *
+	 * @return {@code true} if the defaults apply, otherwise {@code false}
+	 */
+	public boolean isDefault() {
+		// @formatter:off
+		return bufferSize == null
+		        && queuePolicy == null
+		        && pushbackPolicy == null
+		        && parallelism == null
+		        && executor == null
+		        && !isPartitioned();
+		// @formatter:on
+	}
+
+	/**
+	 * Checks whether the messages are dispatched on parallel lanes
+	 *
+	 * @return {@code true} if the dispatch is partitioned, otherwise
+	 *         {@code false}
+	 */
+	public boolean isPartitioned() {
+		return partitions != null && partitions > 1;
+	}
+
+	public int partitions() {
+		return partitions == null ? 1 : partitions;
+	}
+
+	/**
+	 * Returns the capacity of the buffer that holds the received messages
+	 *
+	 * @return the capacity or {@code null} if not specified
+	 */
+	public Integer bufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Returns the user property whose value is the key of a message
+	 *
+	 * @return the user property or {@code null} if the channel is the key
+	 */
+	public String partitionKey() {
+		return partitionKey;
+	}
+
+	/**
+	 * Returns the executor to deliver the messages with
+	 *
+	 * @return the executor or {@code null} if not specified
+	 */
+	public Executor executor() {
+		return executor;
+	}
+
+	/**
+	 * Applies the options to the buffer of the event source which receives the
+	 * messages from the MQTT client
+	 *
+	 * @param builder the buffer builder of the event source
+	 * @return the buffer builder
+	 */
+	public <R, T> BufferBuilder<R, T, BlockingQueue<PushEvent<? extends T>>> applyToSource(
+			final BufferBuilder<R, T, BlockingQueue<PushEvent<? extends T>>> builder) {
+		return applyQueue(builder);
+	}
+
+	/**
+	 * Applies the options to the buffer of the stream which delivers the messages
+	 * to the consumer
+	 *
+	 * @param builder the buffer builder of the stream
+	 * @return the buffer builder
+	 */
+	public <R, T> BufferBuilder<R, T, BlockingQueue<PushEvent<? extends T>>> applyToStream(
+			BufferBuilder<R, T, BlockingQueue<PushEvent<? extends T>>> builder) {
+		builder = applyQueue(builder);
+		if (pushbackPolicy != null) {
+			builder = builder.withPushbackPolicy(pushbackPolicy, pushbackTime == null ? 0L : pushbackTime);
+		}
+		if (parallelism != null) {
+			builder = builder.withParallelism(parallelism);
+		}
+		return builder;
+	}
+
+	private <R, T> BufferBuilder<R, T, BlockingQueue<PushEvent<? extends T>>> applyQueue(
+			BufferBuilder<R, T, BlockingQueue<PushEvent<? extends T>>> builder) {
+		if (bufferSize != null) {
+			builder = builder.withBuffer(new ArrayBlockingQueue<>(bufferSize));
+		}
+		if (queuePolicy != null) {
+			builder = builder.withQueuePolicy(queuePolicy);
+		}
+		if (executor != null) {
+			builder = builder.withExecutor(executor);
+		}
+		return builder;
+	}
+
+}
@@ -21,21 +21,31 @@ import org.osgi.util.pushstream.PushStream;
 public final class SubscriptionAck {
 
 	private final String id;
+	private final String channel;
 	private final PushStream<Message> stream;
 
-	private SubscriptionAck(final PushStream<Message> stream, final String id) {
+	private SubscriptionAck(final PushStream<Message> stream, final String id, final String channel) {
 		this.id = id;
+		this.channel = channel;
 		this.stream = stream;
 	}
 
-	public static SubscriptionAck of(final PushStream<Message> stream, final String id) {
-		return new SubscriptionAck(stream, id);
+	public static SubscriptionAck of(final PushStream<Message> stream, final String id, final String channel) {
+		return new SubscriptionAck(stream, id, channel);
 	}
 
 	public String id() {
 		return id;
 	}
 
+	/**
+	 * Returns the channel that the subscription is registered with, i.e.
+	 * including the topic prefix and the share name if any
+	 */
+	public String channel() {
+		return channel;
+	}
+
 	public PushStream<Message> stream() {
 		return stream;
 	}
@@ -19,6 +19,8 @@ import static java.lang.Thread.MAX_PRIORITY;
 import static java.lang.Thread.MIN_PRIORITY;
 import static java.util.Objects.requireNonNull;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -30,12 +32,23 @@ import java.util.concurrent.atomic.AtomicLong;
  * <li>a naming format for threads
  * <li>a priority
  * <li>the {@link ThreadGroup} the created threads should be bound to
+ * <li>whether virtual threads should be created (Java 21+)
  * </ul>
+ *
+ * Virtual threads are created reflectively such that the builder still runs on
+ * Java 8. If virtual threads are not supported by the runtime, platform threads
+ * are created instead.
  */
 public final class ThreadFactoryBuilder {
 
 	private static final AtomicLong INSTANCE_NUMBER = new AtomicLong(-1);
 
+	/**
+	 * The virtual thread factory of the runtime or {@code null} if virtual
+	 * threads are not supported
+	 */
+	private static final ThreadFactory VIRTUAL_THREAD_FACTORY = lookupVirtualThreadFactory();
+
 	/**
 	 * {@link ThreadGroup} the created {@link Thread}s will bound to.
 	 */
@@ -62,6 +75,11 @@ public final class ThreadFactoryBuilder {
 	 */
 	private Integer priority;
 
+	/**
+	 * We create platform threads by default.
+	 */
+	private boolean virtual;
+
 	public ThreadFactoryBuilder() {
 		threadGroup = getThreadGroupToBeUsed();
 	}
@@ -120,10 +138,56 @@ public final class ThreadFactoryBuilder {
 		return this;
 	}
 
+	/**
+	 * Sets whether virtual threads should be created. Virtual threads are always
+	 * daemon threads with normal priority and are not bound to the configured
+	 * {@link ThreadGroup}.
+	 *
+	 * @param virtual {@code true} to create virtual threads if supported by the
+	 *                runtime
+	 */
+	public ThreadFactoryBuilder setVirtual(final boolean virtual) {
+		this.virtual = virtual;
+		return this;
+	}
+
 	public ThreadFactory build() {
 		return new CustomizedThreadFactory(this);
 	}
 
+	/**
+	 * Checks whether the runtime supports virtual threads
+	 *
+	 * @return {@code true} if virtual threads are supported, otherwise
+	 *         {@code false}
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return VIRTUAL_THREAD_FACTORY != null;
+	}
+
+	/**
+	 * Returns an executor which starts a new thread for every task. This is only
+	 * reasonable for virtual threads as they are not meant to be pooled.
+	 *
+	 * @param threadFactory the thread factory
+	 * @return the executor
+	 */
+	public static Executor newThreadPerTaskExecutor(final ThreadFactory threadFactory) {
+		requireNonNull(threadFactory, "'threadFactory' must not be null");
+		return task -> threadFactory.newThread(task).start();
+	}
+
+	private static ThreadFactory lookupVirtualThreadFactory() {
+		try {
+			// Thread.ofVirtual().factory()
+			final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			final Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (final Exception | LinkageError e) {
+			return null;
+		}
+	}
+
 	private static ThreadGroup getThreadGroupToBeUsed() {
 		final SecurityManager securityManager = System.getSecurityManager();
 		if (securityManager != null) {
@@ -155,6 +219,7 @@ public final class ThreadFactoryBuilder {
 		private final String threadNameFormat;
 		private final ThreadGroup threadGroup;
 		private final Integer threadPriority;
+		private final boolean virtual;
 
 		public CustomizedThreadFactory(final ThreadFactoryBuilder builder) {
 			// in case there is no thread factory name set
@@ -163,6 +228,7 @@ public final class ThreadFactoryBuilder {
 			daemon = builder.daemon;
 			threadPriority = builder.priority;
 			threadGroup = builder.threadGroup;
+			virtual = builder.virtual && isVirtualThreadSupported();
 		}
 
 		@Override
@@ -171,6 +237,11 @@ public final class ThreadFactoryBuilder {
 
 			final String threadName = threadFactoryName
 					+ String.format(threadNameFormat, createdThreadsCount.incrementAndGet());
+			if (virtual) {
+				final Thread thread = VIRTUAL_THREAD_FACTORY.newThread(runnable);
+				thread.setName(threadName);
+				return thread;
+			}
 			final Thread thread = new Thread(threadGroup, runnable, threadName);
 
 			adjustThreadPriority(thread);
@@ -190,6 +261,7 @@ public final class ThreadFactoryBuilder {
 			// @formatter:off
             return getClass().getSimpleName() +
                     "(name:" + threadFactoryName +
+                    ",virtual:" + virtual +
                     ",created threads:" + (createdThreadsCount.get() + 1) + ")";
             // @formatter:on
 		}
@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider.helper;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Comparator.comparingLong;
+import static java.util.stream.Collectors.toList;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks the publish frequency of the topics to find the ones that deserve a
+ * topic alias the most.
+ *
+ * <ul>
+ * <li>the frequencies are estimated using a count-min sketch whose counters are
+ * halved periodically such that topics that are not used anymore cool down
+ * <li>the hot topics are kept in an LFU set which is bounded by the number of
+ * topic aliases granted by the broker and ranked by the number of bytes that an
+ * alias saves, i.e. the frequency multiplied by the length of the topic
+ * </ul>
+ *
+ * The statistics are estimates as the actual aliases are assigned by the MQTT
+ * client while encoding the publish packets. In particular, the number of
+ * bytes saved is hypothetical, i.e. the bytes that aliases for the hot topics
+ * of this LFU set would have saved.
+ */
+public final class TopicAliasStatistics {
+
+	private static final int DEPTH = 4;
+	private static final int WIDTH = 1 << 12;
+	private static final int AGING_PERIOD = WIDTH * 8;
+
+	/** the topic alias property (identifier and two byte integer) */
+	private static final int ALIAS_OVERHEAD = 3;
+
+	private final AtomicIntegerArray sketch = new AtomicIntegerArray(DEPTH * WIDTH);
+	private final AtomicLong samples = new AtomicLong();
+
+	private final LongAdder publishes = new LongAdder();
+	private final LongAdder topicBytes = new LongAdder();
+	private final LongAdder hypotheticalSavedBytes = new LongAdder();
+
+	/** the hot topics and their scores (replaced on every modification) */
+	private volatile Map<String, Long> hotTopics = emptyMap();
+	private volatile long minHotScore;
+	private volatile int capacity;
+
+	/**
+	 * Sets the maximum number of hot topics, i.e. the number of topic aliases
+	 * granted by the broker
+	 *
+	 * @param capacity the maximum number of hot topics
+	 */
+	public synchronized void setCapacity(final int capacity) {
+		this.capacity = capacity;
+		if (hotTopics.size() > capacity) {
+			final Map<String, Long> topics = new HashMap<>();
+			// @formatter:off
+			hotTopics.keySet()
+			         .stream()
+			         .sorted(comparingLong(this::score).reversed())
+			         .limit(capacity)
+			         .forEach(t -> topics.put(t, 0L));
+			// @formatter:on
+			updateHotTopics(topics);
+		}
+	}
+
+	/**
+	 * Records a publish request to the specified topic
+	 *
+	 * @param topic the topic
+	 */
+	public void record(final String topic) {
+		// topics are mostly ASCII, hence the length is a good estimate of the encoded size
+		final int length = topic.length();
+		publishes.increment();
+		topicBytes.add(2L + length);
+
+		final int frequency = increment(topic.hashCode());
+		if (hotTopics.containsKey(topic)) {
+			// a hot topic needs no promotion, hence the monitor is not acquired
+			hypotheticalSavedBytes.add(length - ALIAS_OVERHEAD);
+		} else if (capacity > 0 && length > ALIAS_OVERHEAD) {
+			final long score = (long) frequency * (length - ALIAS_OVERHEAD);
+			if (hotTopics.size() < capacity || score > minHotScore) {
+				promote(topic, score);
+			}
+		}
+		if (samples.incrementAndGet() % AGING_PERIOD == 0) {
+			age();
+		}
+	}
+
+	/**
+	 * Returns the hot topics ordered by their scores (highest first)
+	 *
+	 * @return the hot topics
+	 */
+	public List<String> hotTopics() {
+		// @formatter:off
+		return hotTopics.entrySet()
+		                .stream()
+		                .sorted(comparingLong(Map.Entry<String, Long>::getValue).reversed())
+		                .map(Map.Entry::getKey)
+		                .collect(toList());
+		// @formatter:on
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public long publishes() {
+		return publishes.sum();
+	}
+
+	public long topicBytes() {
+		return topicBytes.sum();
+	}
+
+	/**
+	 * Returns the number of topic bytes that aliases for the hot topics of this
+	 * LFU set would have saved. The aliases actually assigned by the MQTT client
+	 * may differ.
+	 *
+	 * @return the hypothetical number of saved bytes
+	 */
+	public long hypotheticalSavedBytes() {
+		return hypotheticalSavedBytes.sum();
+	}
+
+	private synchronized void promote(final String topic, final long score) {
+		final Map<String, Long> current = hotTopics;
+		if (current.containsKey(topic)) {
+			return;
+		}
+		final Map<String, Long> topics = new HashMap<>(current);
+		if (topics.size() >= capacity) {
+			// evict the least valuable hot topic
+			String coldest = null;
+			long coldestScore = Long.MAX_VALUE;
+			for (final Map.Entry<String, Long> entry : topics.entrySet()) {
+				final long entryScore = score(entry.getKey());
+				if (entryScore < coldestScore) {
+					coldest = entry.getKey();
+					coldestScore = entryScore;
+				}
+			}
+			if (coldest == null || coldestScore >= score) {
+				minHotScore = coldestScore;
+				return;
+			}
+			topics.remove(coldest);
+		}
+		topics.put(topic, score);
+		updateHotTopics(topics);
+	}
+
+	private void updateHotTopics(final Map<String, Long> topics) {
+		topics.replaceAll((t, s) -> score(t));
+		hotTopics = topics;
+		minHotScore = topics.values().stream().mapToLong(Long::longValue).min().orElse(0L);
+	}
+
+	private synchronized void age() {
+		for (int i = 0; i < sketch.length(); i++) {
+			sketch.set(i, sketch.get(i) >>> 1);
+		}
+		updateHotTopics(new HashMap<>(hotTopics));
+	}
+
+	private long score(final String topic) {
+		return (long) estimate(topic.hashCode()) * (topic.length() - ALIAS_OVERHEAD);
+	}
+
+	private int increment(final int hash) {
+		int min = Integer.MAX_VALUE;
+		for (int row = 0; row < DEPTH; row++) {
+			min = Math.min(min, sketch.incrementAndGet(index(hash, row)));
+		}
+		return min;
+	}
+
+	private int estimate(final int hash) {
+		int min = Integer.MAX_VALUE;
+		for (int row = 0; row < DEPTH; row++) {
+			min = Math.min(min, sketch.get(index(hash, row)));
+		}
+		return min;
+	}
+
+	private static int index(final int hash, final int row) {
+		// derive an independent hash per row
+		int h = hash * (0x9E3779B9 + (row << 1));
+		h ^= h >>> 16;
+		return row * WIDTH + (h & (WIDTH - 1));
+	}
+
+}
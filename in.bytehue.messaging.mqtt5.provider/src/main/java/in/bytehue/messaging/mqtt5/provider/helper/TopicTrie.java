@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider.helper;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A concurrent trie of MQTT topic filters that finds all the values registered
+ * for the filters matching a concrete topic.
+ *
+ * <ul>
+ * <li>the trie is copy-on-write: modifications are serialized and replace the
+ * modified path whereas lookups traverse an immutable snapshot without any
+ * locking
+ * <li>lookups do not allocate: the levels of the topic are compared in place
+ * and the matching values are handed over to the specified consumer
+ * <li>the single-level ({@code +}) and the multi-level ({@code #}) wildcards
+ * are supported as specified in MQTT 5.0 (section 4.7), i.e. wildcards at the
+ * first level do not match topics starting with {@code $}
+ * </ul>
+ *
+ * @param <T> the type of the values
+ */
+public final class TopicTrie<T> {
+
+	private static final char LEVEL_SEPARATOR = '/';
+	private static final String SINGLE_LEVEL_WILDCARD = "+";
+	private static final String MULTI_LEVEL_WILDCARD = "#";
+
+	private volatile Node root = Node.EMPTY;
+
+	/**
+	 * Registers the value for the specified topic filter
+	 *
+	 * @param filter the topic filter
+	 * @param value the value to register
+	 */
+	public synchronized void add(final String filter, final T value) {
+		requireNonNull(filter, "'filter' must not be null");
+		requireNonNull(value, "'value' must not be null");
+		root = add(root, filter, 0, value);
+	}
+
+	/**
+	 * Unregisters the value from the specified topic filter
+	 *
+	 * @param filter the topic filter
+	 * @param value the value to unregister
+	 */
+	public synchronized void remove(final String filter, final T value) {
+		requireNonNull(filter, "'filter' must not be null");
+		final Node node = remove(root, filter, 0, value);
+		root = node == null ? Node.EMPTY : node;
+	}
+
+	/**
+	 * Hands over all values registered for the filters matching the specified
+	 * topic to the specified consumer
+	 *
+	 * @param topic the concrete topic (without wildcards)
+	 * @param consumer the consumer of the matching values
+	 */
+	@SuppressWarnings("unchecked")
+	public void match(final String topic, final Consumer<? super T> consumer) {
+		final boolean isSystemTopic = !topic.isEmpty() && topic.charAt(0) == '$';
+		match(root, topic, 0, !isSystemTopic, (Consumer<Object>) consumer);
+	}
+
+	/**
+	 * Checks if there exist no values at all
+	 *
+	 * @return {@code true} if the trie is empty, otherwise {@code false}
+	 */
+	public boolean isEmpty() {
+		return root.isEmpty();
+	}
+
+	private Node add(final Node node, final String filter, final int start, final T value) {
+		if (start > filter.length()) {
+			return node.withValues(append(node.values, value));
+		}
+		final int end = levelEnd(filter, start);
+		final String level = filter.substring(start, end);
+		final Node child = node.child(level);
+		return node.withChild(level, add(child == null ? Node.EMPTY : child, filter, end + 1, value));
+	}
+
+	private Node remove(final Node node, final String filter, final int start, final T value) {
+		if (start > filter.length()) {
+			return node.withValues(delete(node.values, value)).pruned();
+		}
+		final int end = levelEnd(filter, start);
+		final String level = filter.substring(start, end);
+		final Node child = node.child(level);
+		if (child == null) {
+			return node;
+		}
+		return node.withChild(level, remove(child, filter, end + 1, value)).pruned();
+	}
+
+	private void match(final Node node, final String topic, final int start, final boolean allowWildcards,
+			final Consumer<Object> consumer) {
+		// the multi-level wildcard also matches the parent level
+		if (allowWildcards && node.multiLevel != null) {
+			node.multiLevel.forEachValue(consumer);
+		}
+		if (start > topic.length()) {
+			node.forEachValue(consumer);
+			return;
+		}
+		final int end = levelEnd(topic, start);
+		final Node child = node.child(topic, start, end);
+		if (child != null) {
+			match(child, topic, end + 1, true, consumer);
+		}
+		if (allowWildcards && node.singleLevel != null) {
+			match(node.singleLevel, topic, end + 1, true, consumer);
+		}
+	}
+
+	private static int levelEnd(final String topic, final int start) {
+		final int end = topic.indexOf(LEVEL_SEPARATOR, start);
+		return end < 0 ? topic.length() : end;
+	}
+
+	private static Object[] append(final Object[] values, final Object value) {
+		final Object[] newValues = Arrays.copyOf(values, values.length + 1);
+		newValues[values.length] = value;
+		return newValues;
+	}
+
+	private static Object[] delete(final Object[] values, final Object value) {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i].equals(value)) {
+				final Object[] newValues = new Object[values.length - 1];
+				System.arraycopy(values, 0, newValues, 0, i);
+				System.arraycopy(values, i + 1, newValues, i, values.length - i - 1);
+				return newValues;
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Immutable node of the trie. The children are stored in an open addressing
+	 * hash table such that a level of a topic can be looked up without creating a
+	 * substring.
+	 */
+	private static final class Node {
+
+		static final Node EMPTY = new Node(new Object[0], new String[0], new Node[0], 0, null, null);
+
+		final Object[] values;
+		final String[] levels;
+		final Node[] children;
+		final int size;
+		final Node singleLevel;
+		final Node multiLevel;
+
+		Node(final Object[] values, final String[] levels, final Node[] children, final int size,
+				final Node singleLevel, final Node multiLevel) {
+			this.values = values;
+			this.levels = levels;
+			this.children = children;
+			this.size = size;
+			this.singleLevel = singleLevel;
+			this.multiLevel = multiLevel;
+		}
+
+		boolean isEmpty() {
+			return values.length == 0 && size == 0 && singleLevel == null && multiLevel == null;
+		}
+
+		Node pruned() {
+			return isEmpty() ? null : this;
+		}
+
+		void forEachValue(final Consumer<Object> consumer) {
+			for (final Object value : values) {
+				consumer.accept(value);
+			}
+		}
+
+		Node child(final String level) {
+			if (SINGLE_LEVEL_WILDCARD.equals(level)) {
+				return singleLevel;
+			}
+			if (MULTI_LEVEL_WILDCARD.equals(level)) {
+				return multiLevel;
+			}
+			return child(level, 0, level.length());
+		}
+
+		Node child(final String topic, final int start, final int end) {
+			if (size == 0) {
+				return null;
+			}
+			final int length = end - start;
+			final int mask = levels.length - 1;
+			int index = spread(hash(topic, start, end)) & mask;
+			String level;
+			while ((level = levels[index]) != null) {
+				if (level.length() == length && level.regionMatches(0, topic, start, length)) {
+					return children[index];
+				}
+				index = (index + 1) & mask;
+			}
+			return null;
+		}
+
+		Node withValues(final Object[] newValues) {
+			return new Node(newValues, levels, children, size, singleLevel, multiLevel);
+		}
+
+		Node withChild(final String level, final Node child) {
+			if (SINGLE_LEVEL_WILDCARD.equals(level)) {
+				return new Node(values, levels, children, size, child, multiLevel);
+			}
+			if (MULTI_LEVEL_WILDCARD.equals(level)) {
+				return new Node(values, levels, children, size, singleLevel, child);
+			}
+			// rebuild the table of the children (keeping the load factor below 0.5)
+			final boolean exists = child(level) != null;
+			final int newSize = size + (child == null ? (exists ? -1 : 0) : (exists ? 0 : 1));
+			int capacity = 2;
+			while (capacity < newSize * 2) {
+				capacity <<= 1;
+			}
+			final String[] newLevels = new String[newSize == 0 ? 0 : capacity];
+			final Node[] newChildren = new Node[newLevels.length];
+			for (int i = 0; i < levels.length; i++) {
+				if (levels[i] != null && !levels[i].equals(level)) {
+					put(newLevels, newChildren, levels[i], children[i]);
+				}
+			}
+			if (child != null) {
+				put(newLevels, newChildren, level, child);
+			}
+			return new Node(values, newLevels, newChildren, newSize, singleLevel, multiLevel);
+		}
+
+		private static void put(final String[] levels, final Node[] children, final String level,
+				final Node child) {
+			final int mask = levels.length - 1;
+			int index = spread(level.hashCode()) & mask;
+			while (levels[index] != null) {
+				index = (index + 1) & mask;
+			}
+			levels[index] = level;
+			children[index] = child;
+		}
+
+		/**
+		 * Computes the same hash as {@link String#hashCode()} of the substring
+		 */
+		private static int hash(final String topic, final int start, final int end) {
+			int hash = 0;
+			for (int i = start; i < end; i++) {
+				hash = 31 * hash + topic.charAt(i);
+			}
+			return hash;
+		}
+
+		private static int spread(final int hash) {
+			return hash ^ (hash >>> 16);
+		}
+	}
+
+}
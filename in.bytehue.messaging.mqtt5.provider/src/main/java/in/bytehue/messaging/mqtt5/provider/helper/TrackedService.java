@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider.helper;
+
+import static java.util.Objects.requireNonNull;
+import static org.osgi.framework.Constants.OBJECTCLASS;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.util.tracker.ServiceTracker;
+
+/**
+ * Tracks the highest ranked service matching a service filter such that the
+ * service can be retrieved without querying the service registry every time.
+ *
+ * @param <T> the type of the service
+ */
+public final class TrackedService<T> implements AutoCloseable {
+
+	private final ServiceTracker<T, T> tracker;
+
+	private TrackedService(final ServiceTracker<T, T> tracker) {
+		this.tracker = tracker;
+	}
+
+	/**
+	 * Starts tracking the services of the specified type matching the specified
+	 * filter
+	 *
+	 * @param clazz the type of the service
+	 * @param filter the service filter (can be {@code null} or empty to track any
+	 *            service of the specified type)
+	 * @param context the bundle context to use
+	 * @return the opened tracked service
+	 * @throws InvalidSyntaxException if the filter is invalid
+	 */
+	public static <T> TrackedService<T> of(final Class<T> clazz, final String filter, final BundleContext context)
+			throws InvalidSyntaxException {
+		requireNonNull(clazz, "'clazz' must not be null");
+		requireNonNull(context, "'context' must not be null");
+
+		final String classFilter = "(" + OBJECTCLASS + "=" + clazz.getName() + ")";
+		final String effectiveFilter;
+		if (filter == null || filter.trim().isEmpty()) {
+			effectiveFilter = classFilter;
+		} else {
+			effectiveFilter = "(&" + classFilter + filter.trim() + ")";
+		}
+		final Filter serviceFilter = FrameworkUtil.createFilter(effectiveFilter);
+		final ServiceTracker<T, T> tracker = new ServiceTracker<>(context, serviceFilter, null);
+		tracker.open();
+		return new TrackedService<>(tracker);
+	}
+
+	/**
+	 * Returns the highest ranked service currently matching the filter
+	 *
+	 * @return the service or {@code null} if there exists no matching service
+	 */
+	public T get() {
+		return tracker.getService();
+	}
+
+	@Override
+	public void close() {
+		tracker.close();
+	}
+
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider;
+
+import static in.bytehue.messaging.mqtt5.provider.helper.BoundedOutbox.OverflowPolicy.BLOCK;
+import static in.bytehue.messaging.mqtt5.provider.helper.BoundedOutbox.OverflowPolicy.DROP_NEWEST;
+import static in.bytehue.messaging.mqtt5.provider.helper.BoundedOutbox.OverflowPolicy.DROP_OLDEST;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import in.bytehue.messaging.mqtt5.provider.helper.BoundedOutbox;
+
+public class BoundedOutboxTest {
+
+	@Test
+	public void forwardsDirectlyIfNothingIsStored() throws Exception {
+		final BoundedOutbox<String> outbox = new BoundedOutbox<>(2, DROP_OLDEST, e -> {
+		});
+
+		assertThat(outbox.offer("1", false, 0)).isFalse();
+		assertThat(outbox.size()).isZero();
+	}
+
+	@Test
+	public void storesWhileElementsArePending() throws Exception {
+		final BoundedOutbox<String> outbox = new BoundedOutbox<>(5, DROP_OLDEST, e -> {
+		});
+
+		assertThat(outbox.offer("1", true, 0)).isTrue();
+		assertThat(outbox.offer("2", false, 0)).isTrue();
+
+		final List<String> forwarded = new ArrayList<>();
+		outbox.drain(() -> true, forwarded::add);
+
+		assertThat(forwarded).containsExactly("1", "2");
+		assertThat(outbox.offer("3", false, 0)).isFalse();
+	}
+
+	@Test
+	public void dropsOldestIfFull() throws Exception {
+		final List<String> dropped = new ArrayList<>();
+		final BoundedOutbox<String> outbox = new BoundedOutbox<>(2, DROP_OLDEST, dropped::add);
+
+		outbox.offer("1", true, 0);
+		outbox.offer("2", true, 0);
+		outbox.offer("3", true, 0);
+
+		final List<String> forwarded = new ArrayList<>();
+		outbox.drain(() -> true, forwarded::add);
+
+		assertThat(dropped).containsExactly("1");
+		assertThat(forwarded).containsExactly("2", "3");
+	}
+
+	@Test
+	public void dropsNewestIfFull() throws Exception {
+		final List<String> dropped = new ArrayList<>();
+		final BoundedOutbox<String> outbox = new BoundedOutbox<>(2, DROP_NEWEST, dropped::add);
+
+		outbox.offer("1", true, 0);
+		outbox.offer("2", true, 0);
+		outbox.offer("3", true, 0);
+
+		final List<String> forwarded = new ArrayList<>();
+		outbox.drain(() -> true, forwarded::add);
+
+		assertThat(dropped).containsExactly("3");
+		assertThat(forwarded).containsExactly("1", "2");
+	}
+
+	@Test
+	public void blocksUntilRoomIsAvailable() throws Exception {
+		final List<String> dropped = new ArrayList<>();
+		final BoundedOutbox<String> outbox = new BoundedOutbox<>(1, BLOCK, dropped::add);
+
+		outbox.offer("1", true, 0);
+		// drops the element if there is no room in time
+		outbox.offer("2", true, 10);
+		assertThat(dropped).containsExactly("2");
+
+		final List<String> forwarded = new ArrayList<>();
+		final Thread drainer = new Thread(() -> {
+			try {
+				Thread.sleep(100);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			outbox.drain(() -> true, forwarded::add);
+		});
+		drainer.start();
+
+		assertThat(outbox.offer("3", true, 10_000)).isTrue();
+		drainer.join();
+		outbox.drain(() -> true, forwarded::add);
+
+		assertThat(forwarded).containsExactly("1", "3");
+	}
+
+	@Test
+	public void stopsDrainingIfElementsCannotBeForwarded() throws Exception {
+		final BoundedOutbox<String> outbox = new BoundedOutbox<>(5, DROP_OLDEST, e -> {
+		});
+		outbox.offer("1", true, 0);
+		outbox.offer("2", true, 0);
+
+		final List<String> forwarded = new ArrayList<>();
+		outbox.drain(forwarded::isEmpty, forwarded::add);
+
+		assertThat(forwarded).containsExactly("1");
+		assertThat(outbox.size()).isEqualTo(1);
+	}
+
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider;
+
+import static in.bytehue.messaging.mqtt5.provider.helper.ChunkAssembler.CHUNK_ID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.hivemq.client.mqtt.mqtt5.datatypes.Mqtt5UserProperties;
+import com.hivemq.client.mqtt.mqtt5.datatypes.Mqtt5UserProperty;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+
+import in.bytehue.messaging.mqtt5.provider.helper.ChunkAssembler;
+
+public class ChunkAssemblerTest {
+
+	@Test
+	public void splitsAndReassemblesPayload() {
+		final byte[] payload = payload(10_000);
+		final List<Mqtt5Publish> chunks = ChunkAssembler.split(publish(payload), 4_096, "transfer");
+
+		assertThat(chunks).hasSize(3);
+		assertThat(chunks).allMatch(ChunkAssembler::isChunk);
+		assertThat(chunks.get(2).getPayloadAsBytes()).hasSize(10_000 - 2 * 4_096);
+
+		final ChunkAssembler assembler = new ChunkAssembler(1 << 20, 1 << 20, 1_000);
+		assertThat(assembler.add(chunks.get(2))).isNull();
+		assertThat(assembler.add(chunks.get(0))).isNull();
+		// redelivered chunks are ignored
+		assertThat(assembler.add(chunks.get(0))).isNull();
+
+		final Mqtt5Publish message = assembler.add(chunks.get(1));
+		assertThat(message).isNotNull();
+		assertThat(message.getPayloadAsBytes()).isEqualTo(payload);
+		assertThat(message.getTopic().toString()).isEqualTo("a/b");
+		assertThat(ChunkAssembler.isChunk(message)).isFalse();
+		assertThat(message.getUserProperties().asList()).containsExactly(Mqtt5UserProperty.of("key", "value"));
+		assertThat(assembler.pendingTransfers()).isZero();
+	}
+
+	@Test
+	public void rejectsTransfersExceedingTheBounds() {
+		final List<Mqtt5Publish> chunks = ChunkAssembler.split(publish(payload(1_000)), 100, "transfer");
+
+		final ChunkAssembler small = new ChunkAssembler(500, 1 << 20, 1_000);
+		assertThatThrownBy(() -> small.add(chunks.get(0))).isInstanceOf(IllegalArgumentException.class);
+
+		final ChunkAssembler assembler = new ChunkAssembler(1_000, 1_500, 1_000);
+		assembler.add(chunks.get(0));
+		final List<Mqtt5Publish> others = ChunkAssembler.split(publish(payload(1_000)), 100, "other");
+		assertThatThrownBy(() -> assembler.add(others.get(0))).isInstanceOf(IllegalArgumentException.class);
+		assertThat(assembler.pendingTransfers()).isEqualTo(1);
+	}
+
+	@Test
+	public void discardsExpiredTransfers() {
+		final AtomicLong clock = new AtomicLong();
+		final ChunkAssembler assembler = new ChunkAssembler(1_000, 1_500, 1_000, clock::get);
+		final List<Mqtt5Publish> chunks = ChunkAssembler.split(publish(payload(1_000)), 100, "transfer");
+		final List<Mqtt5Publish> others = ChunkAssembler.split(publish(payload(1_000)), 100, "other");
+
+		assembler.add(chunks.get(0));
+		clock.set(1_000);
+		// the buffer of the expired transfer is released
+		assertThat(assembler.add(others.get(0))).isNull();
+		assertThat(assembler.pendingTransfers()).isEqualTo(1);
+	}
+
+	@Test
+	public void sweepsExpiredTransfersWithoutNewChunks() {
+		final AtomicLong clock = new AtomicLong();
+		final ChunkAssembler assembler = new ChunkAssembler(1_000, 1_500, 1_000, clock::get);
+		final List<Mqtt5Publish> chunks = ChunkAssembler.split(publish(payload(1_000)), 100, "transfer");
+
+		assembler.add(chunks.get(0));
+		clock.set(999);
+		assertThat(assembler.expire()).isZero();
+
+		clock.set(1_000);
+		assertThat(assembler.expire()).isEqualTo(1);
+		assertThat(assembler.pendingTransfers()).isZero();
+	}
+
+	@Test
+	public void rejectsMalformedChunks() {
+		// @formatter:off
+		final Mqtt5Publish chunk = Mqtt5Publish.builder()
+		                                       .topic("a/b")
+		                                       .payload(new byte[1])
+		                                       .userProperties(Mqtt5UserProperties.of(Mqtt5UserProperty.of(CHUNK_ID, "transfer")))
+		                                       .build();
+		// @formatter:on
+		final ChunkAssembler assembler = new ChunkAssembler(1_000, 1_000, 1_000);
+		assertThatThrownBy(() -> assembler.add(chunk)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private static Mqtt5Publish publish(final byte[] payload) {
+		// @formatter:off
+		return Mqtt5Publish.builder()
+		                   .topic("a/b")
+		                   .payload(payload)
+		                   .userProperties(Mqtt5UserProperties.builder().add("key", "value").build())
+		                   .build();
+		// @formatter:on
+	}
+
+	private static byte[] payload(final int size) {
+		final byte[] payload = new byte[size];
+		for (int i = 0; i < size; i++) {
+			payload[i] = (byte) i;
+		}
+		return payload;
+	}
+
+}
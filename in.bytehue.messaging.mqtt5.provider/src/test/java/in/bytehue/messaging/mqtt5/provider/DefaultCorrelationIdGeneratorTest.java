@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import in.bytehue.messaging.mqtt5.provider.helper.DefaultCorrelationIdGenerator;
+
+public class DefaultCorrelationIdGeneratorTest {
+
+	@Test
+	public void generatesUniqueIdentifiersAcrossThreads() throws Exception {
+		final DefaultCorrelationIdGenerator generator = new DefaultCorrelationIdGenerator();
+		final Set<String> ids = ConcurrentHashMap.newKeySet();
+
+		final List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			final Thread thread = new Thread(() -> {
+				for (int j = 0; j < 5_000; j++) {
+					ids.add(generator.generate());
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		assertThat(ids).hasSize(8 * 5_000);
+	}
+
+	@Test
+	public void generatesIdentifiersWithDifferentPrefixesPerInstance() {
+		final String id1 = new DefaultCorrelationIdGenerator().generate();
+		final String id2 = new DefaultCorrelationIdGenerator().generate();
+
+		assertThat(id1).isNotEqualTo(id2);
+	}
+
+}
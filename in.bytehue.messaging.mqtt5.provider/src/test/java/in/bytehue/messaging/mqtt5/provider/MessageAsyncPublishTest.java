@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider;
+
+import static in.bytehue.messaging.mqtt5.provider.TestHelper.waitForMqttConnectionReady;
+import static in.bytehue.messaging.mqtt5.provider.TestHelper.waitForRequestProcessing;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.osgi.service.messaging.Message;
+import org.osgi.service.messaging.MessageContextBuilder;
+import org.osgi.service.messaging.MessageSubscription;
+import org.osgi.util.promise.Promise;
+
+import aQute.launchpad.Launchpad;
+import aQute.launchpad.LaunchpadBuilder;
+import aQute.launchpad.Service;
+import aQute.launchpad.junit.LaunchpadRunner;
+import in.bytehue.messaging.mqtt5.api.MqttMessagePublisher;
+
+@RunWith(LaunchpadRunner.class)
+public final class MessageAsyncPublishTest {
+
+	@Service
+	private Launchpad launchpad;
+
+	@Service
+	private MqttMessagePublisher publisher;
+
+	@Service
+	private MessageSubscription subscriber;
+
+	@Service
+	private MessageContextBuilder mcb;
+
+	static LaunchpadBuilder builder = new LaunchpadBuilder().bndrun("test.bndrun").export("sun.misc");
+
+	@Before
+	public void setup() throws InterruptedException {
+		waitForMqttConnectionReady(launchpad);
+	}
+
+	@Test
+	public void test_publish_async() throws Exception {
+		final AtomicBoolean flag1 = new AtomicBoolean();
+		final AtomicBoolean flag2 = new AtomicBoolean();
+
+		final String channel = "ab/ba";
+		final String payload = "abc";
+		final String contentType = "text/plain";
+
+		// @formatter:off
+        final Message message = mcb.channel(channel)
+                                   .contentType(contentType)
+                                   .content(ByteBuffer.wrap(payload.getBytes()))
+                                   .extensionEntry("qos", 1)
+                                   .buildMessage();
+        // @formatter:on
+
+		subscriber.subscribe(channel).forEach(m -> {
+			final String topic = m.getContext().getChannel();
+			final String content = new String(m.payload().array(), UTF_8);
+
+			assertThat(channel).isEqualTo(topic);
+			assertThat(payload).isEqualTo(content);
+
+			flag1.set(true);
+		});
+		publisher.publishAsync(message).onSuccess(m -> flag2.set(m == message));
+
+		waitForRequestProcessing(flag1);
+		waitForRequestProcessing(flag2);
+	}
+
+	@Test
+	public void test_publish_async_with_channel() throws Exception {
+		final AtomicBoolean flag = new AtomicBoolean();
+
+		final String channel = "ab/ba";
+		final String payload = "abc";
+
+		// @formatter:off
+        final Message message = mcb.content(ByteBuffer.wrap(payload.getBytes()))
+                                   .buildMessage();
+        // @formatter:on
+
+		subscriber.subscribe(channel).forEach(m -> flag.set(true));
+		publisher.publishAsync(message, channel);
+
+		waitForRequestProcessing(flag);
+	}
+
+	@Test
+	public void test_publish_all() throws Exception {
+		final AtomicBoolean flag1 = new AtomicBoolean();
+		final AtomicBoolean flag2 = new AtomicBoolean();
+		final AtomicInteger counter = new AtomicInteger();
+
+		final String channel = "ab/ba";
+		final String payload = "abc";
+
+		// @formatter:off
+        final Message message = mcb.channel(channel)
+                                   .content(ByteBuffer.wrap(payload.getBytes()))
+                                   .extensionEntry("qos", 1)
+                                   .buildMessage();
+        // @formatter:on
+
+		subscriber.subscribe(channel).forEach(m -> {
+			if (counter.incrementAndGet() == 3) {
+				flag1.set(true);
+			}
+		});
+		final List<Message> messages = Arrays.asList(message, message, message);
+		publisher.publishAll(messages).onSuccess(results -> {
+			assertThat(results).hasSize(3);
+			for (final Promise<Message> result : results) {
+				assertThat(result.isDone()).isTrue();
+				assertThat(result.getFailure()).isNull();
+			}
+			flag2.set(true);
+		});
+
+		waitForRequestProcessing(flag1);
+		waitForRequestProcessing(flag2);
+	}
+
+	@Test
+	public void test_publish_all_with_conflation() throws Exception {
+		final AtomicBoolean flag1 = new AtomicBoolean();
+		final AtomicBoolean flag2 = new AtomicBoolean();
+		final AtomicInteger counter = new AtomicInteger();
+
+		final String channel = "ab/ba/conflated";
+		final String payload = "abc";
+
+		// @formatter:off
+        final Message message = mcb.channel(channel)
+                                   .content(ByteBuffer.wrap(payload.getBytes()))
+                                   .extensionEntry("qos", 1)
+                                   .extensionEntry("conflate", true)
+                                   .buildMessage();
+        // @formatter:on
+
+		subscriber.subscribe(channel).forEach(m -> {
+			counter.incrementAndGet();
+			flag1.set(true);
+		});
+		final List<Message> messages = Collections.nCopies(50, message);
+		publisher.publishAll(messages).onSuccess(results -> {
+			for (final Promise<Message> result : results) {
+				assertThat(result.getFailure()).isNull();
+			}
+			flag2.set(true);
+		});
+
+		waitForRequestProcessing(flag1);
+		waitForRequestProcessing(flag2);
+
+		// the messages replaced while the first one was in flight are never sent
+		assertThat(counter.get()).isLessThan(50);
+	}
+
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider;
+
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.ConfigurationPid.SUBSCRIBER;
+import static in.bytehue.messaging.mqtt5.provider.TestHelper.waitForMqttConnectionReady;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+
+import java.nio.ByteBuffer;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.messaging.Features;
+import org.osgi.service.messaging.Message;
+import org.osgi.service.messaging.MessageContext;
+import org.osgi.service.messaging.MessageContextBuilder;
+import org.osgi.service.messaging.MessagePublisher;
+import org.osgi.service.messaging.MessageSubscription;
+import org.osgi.util.pushstream.PushStream;
+
+import aQute.launchpad.Launchpad;
+import aQute.launchpad.LaunchpadBuilder;
+import aQute.launchpad.Service;
+import aQute.launchpad.junit.LaunchpadRunner;
+
+@RunWith(LaunchpadRunner.class)
+public final class MessageManualAcknowledgementTest {
+
+	@Service
+	private Launchpad launchpad;
+
+	@Service
+	private ConfigurationAdmin configAdmin;
+
+	@Service
+	private MessagePublisher publisher;
+
+	@Service
+	private MessageContextBuilder mcb;
+
+	private Configuration configuration;
+
+	static LaunchpadBuilder builder = new LaunchpadBuilder().bndrun("test.bndrun").export("sun.misc");
+
+	@Before
+	public void setup() throws Exception {
+		waitForMqttConnectionReady(launchpad);
+
+		configuration = configAdmin.getConfiguration(SUBSCRIBER, "?");
+
+		final Dictionary<String, Object> properties = new Hashtable<>();
+		properties.put("manualAcknowledgement", true);
+
+		configuration.update(properties);
+		SECONDS.sleep(2);
+	}
+
+	@After
+	public void teardown() throws Exception {
+		configuration.delete();
+	}
+
+	@Test
+	public void test_messages_more_than_receive_maximum() throws Exception {
+		final AtomicInteger received = new AtomicInteger();
+
+		final String channel = "ab/ba/manual";
+		final String payload = "abc";
+		// the broker stops sending after the receive maximum (10) if the messages are not acknowledged
+		final int numberOfMessages = 50;
+
+		final MessageSubscription subscriber = launchpad.getService(MessageSubscription.class).get();
+
+		// @formatter:off
+		final MessageContext subscriptionContext = mcb.channel(channel)
+		                                              .extensionEntry(Features.EXTENSION_QOS, 1)
+		                                              .buildContext();
+		// @formatter:on
+		final PushStream<Message> stream = subscriber.subscribe(subscriptionContext);
+		stream.forEach(m -> received.incrementAndGet());
+
+		for (int i = 0; i < numberOfMessages; i++) {
+			// @formatter:off
+			final Message message = mcb.channel(channel)
+			                           .extensionEntry(Features.EXTENSION_QOS, 1)
+			                           .content(ByteBuffer.wrap(payload.getBytes()))
+			                           .buildMessage();
+			// @formatter:on
+			publisher.publish(message);
+		}
+		await().atMost(10, SECONDS).until(() -> received.get() == numberOfMessages);
+
+		stream.close();
+	}
+
+	@Test
+	public void test_buffered_messages_settled_on_close() throws Exception {
+		final AtomicInteger received = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+
+		final String channel = "ab/ba/manual/close";
+		final String payload = "abc";
+		// the blocked stream buffers as many messages as the receive maximum (10)
+		final int numberOfMessages = 11;
+
+		final MessageSubscription subscriber = launchpad.getService(MessageSubscription.class).get();
+
+		// @formatter:off
+		final MessageContext subscriptionContext = mcb.channel(channel)
+		                                              .extensionEntry(Features.EXTENSION_QOS, 1)
+		                                              .buildContext();
+		// @formatter:on
+		final PushStream<Message> blockedStream = subscriber.subscribe(subscriptionContext);
+		blockedStream.forEach(m -> {
+			try {
+				release.await();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		final PushStream<Message> stream = subscriber.subscribe(subscriptionContext);
+		stream.forEach(m -> received.incrementAndGet());
+
+		publish(channel, payload, numberOfMessages);
+		await().atMost(10, SECONDS).until(() -> received.get() == numberOfMessages);
+
+		// the broker only sends further messages once the buffered ones are acknowledged
+		blockedStream.close();
+		release.countDown();
+
+		publish(channel, payload, numberOfMessages);
+		await().atMost(10, SECONDS).until(() -> received.get() == 2 * numberOfMessages);
+
+		stream.close();
+	}
+
+	private void publish(final String channel, final String payload, final int numberOfMessages) {
+		for (int i = 0; i < numberOfMessages; i++) {
+			// @formatter:off
+			final Message message = mcb.channel(channel)
+			                           .extensionEntry(Features.EXTENSION_QOS, 1)
+			                           .content(ByteBuffer.wrap(payload.getBytes()))
+			                           .buildMessage();
+			// @formatter:on
+			publisher.publish(message);
+		}
+	}
+
+}
@@ -89,4 +89,39 @@ public final class MessagePacketSizeTest {
 		waitForRequestProcessing(flag);
 	}
 
+	@Test
+	public void test_packet_configuration_size_exceeds_with_chunking() throws IOException, InterruptedException {
+		final AtomicBoolean flag = new AtomicBoolean();
+
+		final String channel = "ab/ba/chunked";
+		final String contentType = "application/octet-stream";
+
+		final byte[] payload = new byte[100_000];
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte) i;
+		}
+
+		// @formatter:off
+        final Message message = mcb.channel(channel)
+                                   .contentType(contentType)
+                                   .content(ByteBuffer.wrap(payload))
+                                   .extensionEntry("chunked", true)
+                                   .buildMessage();
+        // @formatter:on
+
+		subscriber.subscribe(channel).forEach(m -> {
+			final String topic = m.getContext().getChannel();
+			final String ctype = m.getContext().getContentType();
+			final ByteBuffer content = m.payload();
+
+			assertThat(channel).isEqualTo(topic);
+			assertThat(contentType).isEqualTo(ctype);
+			assertThat(content).isEqualTo(ByteBuffer.wrap(payload));
+
+			flag.set(true);
+		});
+		publisher.publish(message);
+		waitForRequestProcessing(flag);
+	}
+
 }
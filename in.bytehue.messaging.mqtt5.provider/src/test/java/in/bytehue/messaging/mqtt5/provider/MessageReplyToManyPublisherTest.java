@@ -98,4 +98,27 @@ public final class MessageReplyToManyPublisherTest {
 		waitForRequestProcessing(flag);
 	}
 
+	@Test
+	public void test_publish_with_reply_many_deadline() throws Exception {
+		final AtomicBoolean flag = new AtomicBoolean();
+
+		final String reqChannel = "a/b/deadline";
+		final String resChannel = "c/d/deadline";
+		final String payload = "abc";
+
+		// @formatter:off
+        final Message message = mcb.withReplyToTimeout(1_000L)
+                                   .channel(resChannel)
+                                   .replyTo(reqChannel)
+                                   .content(ByteBuffer.wrap(payload.getBytes()))
+                                   .buildMessage();
+        // @formatter:on
+
+		// nobody replies and the stream gets closed on the deadline
+		replyToPublisher.publishWithReplyMany(message).forEach(m -> {
+		}).onResolve(() -> flag.set(true));
+
+		waitForRequestProcessing(flag);
+	}
+
 }
@@ -15,10 +15,13 @@
  ******************************************************************************/
 package in.bytehue.messaging.mqtt5.provider;
 
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.Extension.REPLY_TO_TIMEOUT;
 import static in.bytehue.messaging.mqtt5.provider.TestHelper.waitForMqttConnectionReady;
 import static in.bytehue.messaging.mqtt5.provider.TestHelper.waitForRequestProcessing;
+import static org.assertj.core.api.Assertions.assertThat;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Before;
@@ -135,4 +138,49 @@ public final class MessageReplyToPublisherTest {
 		waitForRequestProcessing(flag);
 	}
 
+	@Test
+	public void test_publish_with_reply_timeout() throws Exception {
+		final AtomicBoolean flag = new AtomicBoolean();
+
+		final String reqChannel = "a/b/timeout";
+		final String resChannel = "c/d/timeout";
+		final String payload = "abc";
+
+		// @formatter:off
+        final Message message = mcb.channel(resChannel)
+                                   .replyTo(reqChannel)
+                                   .extensionEntry(REPLY_TO_TIMEOUT, 1_000L)
+                                   .content(ByteBuffer.wrap(payload.getBytes()))
+                                   .buildMessage();
+        // @formatter:on
+
+		// nobody replies to the request
+		replyToPublisher.publishWithReply(message).onFailure(e -> flag.set(e instanceof TimeoutException));
+
+		waitForRequestProcessing(flag);
+	}
+
+	@Test
+	public void test_publish_with_reply_on_shared_inbox_keeps_request_context() throws Exception {
+		final AtomicBoolean flag = new AtomicBoolean();
+
+		final String resChannel = "c/d/inbox";
+		final String payload = "abc";
+
+		// @formatter:off
+        final Message message = mcb.channel(resChannel)
+                                   .extensionEntry(REPLY_TO_TIMEOUT, 1_000L)
+                                   .content(ByteBuffer.wrap(payload.getBytes()))
+                                   .buildMessage();
+        // @formatter:on
+
+		// nobody replies to the request
+		replyToPublisher.publishWithReply(message).onFailure(e -> flag.set(e instanceof TimeoutException));
+
+		waitForRequestProcessing(flag);
+
+		assertThat(message.getContext().getReplyToChannel()).isNull();
+		assertThat(message.getContext().getCorrelationId()).isNull();
+	}
+
 }
@@ -193,6 +193,47 @@ public final class MessageReplyToSingleHandlerTest {
 		waitForRequestProcessing(flag2);
 	}
 
+	@Test
+	public void test_reply_to_single_subscription_handler_with_shared_reply_inbox() throws Exception {
+		final AtomicBoolean flag1 = new AtomicBoolean();
+		final AtomicBoolean flag2 = new AtomicBoolean();
+
+		final String channel = "a/b/inbox";
+		final String payload = "abc";
+		final String contentType = "text/plain";
+
+		final ReplyToSingleSubscriptionHandler handler = (m, mcb) -> {
+			// @formatter:off
+			final Message message = mcb.contentType(contentType)
+					.content(ByteBuffer.wrap(payload.getBytes()))
+					.buildMessage();
+			// @formatter:on
+			flag1.set(true);
+			return message;
+		};
+		final String targetKey = "osgi.messaging.replyToSubscription.target";
+		final String targetValue = "(&(osgi.messaging.protocol=mqtt5)(osgi.messaging.name=mqtt5-hivemq-adapter)(osgi.messaging.feature=replyTo))";
+
+		final String channelKey = "osgi.messaging.replyToSubscription.channel";
+		final String[] channelValue = { channel }; // subscribe
+
+		launchpad.register(ReplyToSingleSubscriptionHandler.class, handler, targetKey, targetValue, channelKey,
+				channelValue);
+
+		// no reply-to channel such that the reply is received on the shared inbox
+		// @formatter:off
+		final Message message = mcb.channel(channel) // publish
+				.contentType(contentType)
+				.content(ByteBuffer.wrap(payload.getBytes()))
+				.buildMessage();
+		// @formatter:on
+
+		replyToPublisher.publishWithReply(message).onSuccess(m -> flag2.set(true));
+
+		waitForRequestProcessing(flag1);
+		waitForRequestProcessing(flag2);
+	}
+
 	@Test
 	public void test_reply_to_single_subscription_handler_without_protocol_in_target_key() throws Exception {
 		final String channel = "a/b";
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider;
+
+import static in.bytehue.messaging.mqtt5.api.MqttMessageConstants.ConfigurationPid.CLIENT;
+import static in.bytehue.messaging.mqtt5.provider.TestHelper.waitForMqttConnectionReady;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import java.nio.ByteBuffer;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.osgi.service.cm.Configuration;
+import org.osgi.service.cm.ConfigurationAdmin;
+import org.osgi.service.messaging.Features;
+import org.osgi.service.messaging.Message;
+import org.osgi.service.messaging.MessageContext;
+import org.osgi.service.messaging.MessageContextBuilder;
+import org.osgi.service.messaging.MessagePublisher;
+import org.osgi.util.pushstream.PushStream;
+
+import aQute.launchpad.Launchpad;
+import aQute.launchpad.LaunchpadBuilder;
+import aQute.launchpad.Service;
+import aQute.launchpad.junit.LaunchpadRunner;
+import in.bytehue.messaging.mqtt5.provider.helper.SubscriptionAck;
+
+@RunWith(LaunchpadRunner.class)
+public final class MessageResubscriptionTest {
+
+	@Service
+	private Launchpad launchpad;
+
+	@Service
+	private ConfigurationAdmin configAdmin;
+
+	@Service
+	private MessagePublisher publisher;
+
+	@Service
+	private MessageSubscriptionProvider subscriber;
+
+	@Service
+	private MessageSubscriptionRegistry registry;
+
+	@Service
+	private MessageClientProvider messagingClient;
+
+	@Service
+	private MessageContextBuilder mcb;
+
+	static LaunchpadBuilder builder = new LaunchpadBuilder().bndrun("test.bndrun").export("sun.misc");
+
+	@Before
+	public void setup() throws InterruptedException {
+		waitForMqttConnectionReady(launchpad);
+	}
+
+	@Test
+	public void test_subscriptions_restored_without_session() throws Exception {
+		final AtomicBoolean flag = new AtomicBoolean();
+
+		final String channel = "ab/ba/resubscription";
+		final String payload = "abc";
+
+		// @formatter:off
+		final MessageContext subscriptionContext = mcb.channel(channel)
+		                                              .extensionEntry(Features.EXTENSION_QOS, 1)
+		                                              .buildContext();
+		// @formatter:on
+		final SubscriptionAck subscription = subscriber._subscribe(subscriptionContext);
+		final PushStream<Message> stream = subscription.stream();
+		stream.forEach(m -> flag.set(channel.equals(m.getContext().getChannel())));
+
+		// reconnects with a new client that starts a new session on the broker
+		final Configuration configuration = configAdmin.getConfiguration(CLIENT, "?");
+
+		final Dictionary<String, Object> properties = new Hashtable<>();
+		properties.put("server", "broker.emqx.io");
+		properties.put("cleanStart", true);
+
+		configuration.update(properties);
+		SECONDS.sleep(2);
+		waitForMqttConnectionReady(launchpad);
+
+		assertThat(messagingClient.isSessionPresent()).isFalse();
+		assertThat(registry.getSubscription(channel, subscription.id())).isNotNull();
+
+		publisher.publish(mcb.channel(channel).content(ByteBuffer.wrap(payload.getBytes())).buildMessage());
+
+		await().atMost(10, SECONDS).untilTrue(flag);
+
+		stream.close();
+	}
+
+}
@@ -21,8 +21,12 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Before;
@@ -34,11 +38,14 @@ import org.osgi.service.messaging.MessageContext;
 import org.osgi.service.messaging.MessageContextBuilder;
 import org.osgi.service.messaging.MessagePublisher;
 import org.osgi.service.messaging.MessageSubscription;
+import org.osgi.util.promise.Promise;
+import org.osgi.util.pushstream.PushStream;
 
 import aQute.launchpad.Launchpad;
 import aQute.launchpad.LaunchpadBuilder;
 import aQute.launchpad.Service;
 import aQute.launchpad.junit.LaunchpadRunner;
+import in.bytehue.messaging.mqtt5.api.MqttMessageSubscription;
 
 @RunWith(LaunchpadRunner.class)
 public final class MessageSubPubTest {
@@ -52,6 +59,9 @@ public final class MessageSubPubTest {
 	@Service
 	private MessageSubscription subscriber;
 
+	@Service
+	private MqttMessageSubscription mqttSubscriber;
+
 	@Service
 	private MessageContextBuilder mcb;
 
@@ -274,4 +284,141 @@ public final class MessageSubPubTest {
 		waitForRequestProcessing(flag);
 	}
 
+	@Test
+	public void test_sub_pub_with_compression() throws Exception {
+		final AtomicBoolean flag = new AtomicBoolean();
+
+		final String channel = "ab/ba/compressed";
+		final StringBuilder payload = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			payload.append("{\"temperature\":").append(i).append('}');
+		}
+		final String contentType = "application/json";
+
+		// @formatter:off
+        final Message message = mcb.channel(channel)
+                                   .contentType(contentType)
+                                   .content(ByteBuffer.wrap(payload.toString().getBytes()))
+                                   .extensionEntry("compression", "gzip")
+                                   .buildMessage();
+        // @formatter:on
+
+		subscriber.subscribe(channel).forEach(m -> {
+			final String topic = m.getContext().getChannel();
+			final String ctype = m.getContext().getContentType();
+			final String content = new String(m.payload().array(), UTF_8);
+
+			assertThat(channel).isEqualTo(topic);
+			assertThat(payload.toString()).isEqualTo(content);
+			assertThat(contentType).isEqualTo(ctype);
+
+			flag.set(true);
+		});
+		publisher.publish(message);
+		waitForRequestProcessing(flag);
+	}
+
+	@Test
+	public void test_sub_pub_with_stream_options() throws Exception {
+		final AtomicBoolean flag = new AtomicBoolean();
+
+		final String channel = "ab/ba/buffered";
+		final String payload = "abc";
+		final String contentType = "text/plain";
+
+		final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "stream-executor"));
+		try {
+			// @formatter:off
+			final MessageContext subscriptionContext = mcb.channel(channel)
+			                                              .extensionEntry("streamBufferSize", 8)
+			                                              .extensionEntry("streamQueuePolicy", "DISCARD_OLDEST")
+			                                              .extensionEntry("streamPushbackPolicy", "ON_FULL_FIXED")
+			                                              .extensionEntry("streamPushbackTimeInMillis", 10L)
+			                                              .extensionEntry("streamExecutor", executor)
+			                                              .extensionEntry("streamParallelism", 1)
+			                                              .buildContext();
+
+			final Message message = mcb.channel(channel)
+			                           .contentType(contentType)
+			                           .content(ByteBuffer.wrap(payload.getBytes()))
+			                           .buildMessage();
+			// @formatter:on
+
+			subscriber.subscribe(subscriptionContext).forEach(m -> {
+				final String content = new String(m.payload().array(), UTF_8);
+
+				assertThat(payload).isEqualTo(content);
+				assertThat(Thread.currentThread().getName()).isEqualTo("stream-executor");
+
+				flag.set(true);
+			});
+			publisher.publish(message);
+			waitForRequestProcessing(flag);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void test_sub_pub_with_batch_subscription() throws Exception {
+		final AtomicBoolean flag1 = new AtomicBoolean();
+		final AtomicBoolean flag2 = new AtomicBoolean();
+
+		final String channel1 = "ab/ba/batch/1";
+		final String channel2 = "ab/ba/batch/2";
+		final String payload = "abc";
+
+		// @formatter:off
+		final MessageContext subscriptionContext1 = mcb.channel(channel1)
+		                                               .extensionEntry(Features.EXTENSION_QOS, 0)
+		                                               .buildContext();
+		final MessageContext subscriptionContext2 = mcb.channel(channel2)
+		                                               .extensionEntry(Features.EXTENSION_QOS, 1)
+		                                               .buildContext();
+		// @formatter:on
+
+		final List<PushStream<Message>> streams = mqttSubscriber
+				.subscribeAll(Arrays.asList(subscriptionContext1, subscriptionContext2));
+		assertThat(streams).hasSize(2);
+
+		streams.get(0).forEach(m -> flag1.set(channel1.equals(m.getContext().getChannel())));
+		streams.get(1).forEach(m -> flag2.set(channel2.equals(m.getContext().getChannel())));
+
+		// @formatter:off
+		publisher.publish(mcb.channel(channel1).content(ByteBuffer.wrap(payload.getBytes())).buildMessage());
+		publisher.publish(mcb.channel(channel2).content(ByteBuffer.wrap(payload.getBytes())).buildMessage());
+		// @formatter:on
+
+		waitForRequestProcessing(flag1);
+		waitForRequestProcessing(flag2);
+
+		streams.forEach(PushStream::close);
+	}
+
+	@Test
+	public void test_sub_pub_with_async_subscription() throws Exception {
+		final AtomicBoolean flag = new AtomicBoolean();
+
+		final String channel = "ab/ba/async";
+		final String payload = "abc";
+
+		// @formatter:off
+		final MessageContext subscriptionContext = mcb.channel(channel)
+		                                              .extensionEntry(Features.EXTENSION_QOS, 1)
+		                                              .buildContext();
+		// @formatter:on
+
+		final Promise<PushStream<Message>> promise = mqttSubscriber.subscribeAsync(subscriptionContext);
+		final PushStream<Message> stream = promise.getValue();
+		assertThat(promise.getFailure()).isNull();
+
+		stream.forEach(m -> flag.set(channel.equals(m.getContext().getChannel())));
+
+		publisher.publish(mcb.channel(channel).content(ByteBuffer.wrap(payload.getBytes())).buildMessage());
+
+		waitForRequestProcessing(flag);
+
+		stream.close();
+	}
+
 }
@@ -18,15 +18,19 @@ package in.bytehue.messaging.mqtt5.provider;
 import static in.bytehue.messaging.mqtt5.provider.TestHelper.waitForMqttConnectionReady;
 import static in.bytehue.messaging.mqtt5.provider.TestHelper.waitForRequestProcessing;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.osgi.service.messaging.Message;
+import org.osgi.service.messaging.MessageContext;
 import org.osgi.service.messaging.MessageContextBuilder;
 import org.osgi.service.messaging.MessagePublisher;
 import org.osgi.service.messaging.dto.SubscriptionDTO;
@@ -37,6 +41,7 @@ import aQute.launchpad.Launchpad;
 import aQute.launchpad.LaunchpadBuilder;
 import aQute.launchpad.Service;
 import aQute.launchpad.junit.LaunchpadRunner;
+import in.bytehue.messaging.mqtt5.api.MqttSubscriptionException;
 import in.bytehue.messaging.mqtt5.provider.helper.SubscriptionAck;
 
 @RunWith(LaunchpadRunner.class)
@@ -254,4 +259,174 @@ public final class MessageSubscriptionRegistryTest {
 		assertThat(registry.getSubscription(channel, subscription.id())).isNull();
 	}
 
+	@Test
+	public void test_multiplexed_subscriptions_of_same_topic() throws Exception {
+		final AtomicBoolean flag1 = new AtomicBoolean();
+		final AtomicBoolean flag2 = new AtomicBoolean();
+
+		final String channel = "ab/ba/multiplexed";
+		final String payload = "abc";
+
+		final SubscriptionAck subscription1 = subscriber._subscribe(channel);
+		final SubscriptionAck subscription2 = subscriber._subscribe(channel);
+
+		subscription1.stream().forEach(m -> flag1.set(true));
+		subscription2.stream().forEach(m -> flag2.set(true));
+
+		assertThat(registry.getSubscriptions(channel)).hasSize(2);
+
+		// @formatter:off
+        final Message message = mcb.channel(channel)
+                                   .content(ByteBuffer.wrap(payload.getBytes()))
+                                   .buildMessage();
+        // @formatter:on
+		publisher.publish(message);
+
+		waitForRequestProcessing(flag1);
+		waitForRequestProcessing(flag2);
+
+		// the broker subscription is retained as long as a local subscription exists
+		subscription1.stream().close();
+		TimeUnit.SECONDS.sleep(2);
+
+		assertThat(registry.getSubscription(channel, subscription1.id())).isNull();
+		assertThat(registry.getSubscription(channel, subscription2.id())).isNotNull();
+
+		flag2.set(false);
+		publisher.publish(message);
+		waitForRequestProcessing(flag2);
+
+		subscription2.stream().close();
+		TimeUnit.SECONDS.sleep(2);
+
+		assertThat(registry.getSubscriptions(channel)).isEmpty();
+	}
+
+	@Test
+	public void test_shared_subscription() throws Exception {
+		final AtomicBoolean flag = new AtomicBoolean();
+
+		final String channel = "ab/ba/shared";
+		final String sharedChannel = "$share/group-1/" + channel;
+		final String payload = "abc";
+
+		// @formatter:off
+		final MessageContext subscriptionContext = mcb.channel(channel)
+		                                              .extensionEntry("shareGroup", "group-1")
+		                                              .buildContext();
+		// @formatter:on
+		final SubscriptionAck subscription = subscriber._subscribe(subscriptionContext);
+		subscription.stream().forEach(m -> flag.set(true));
+
+		assertThat(subscription.channel()).isEqualTo(sharedChannel);
+		assertThat(registry.getSubscriptions(sharedChannel)).hasSize(1);
+		assertThat(registry.getSubscriptions(channel)).isEmpty();
+
+		// @formatter:off
+        final Message message = mcb.channel(channel)
+                                   .content(ByteBuffer.wrap(payload.getBytes()))
+                                   .buildMessage();
+        // @formatter:on
+		publisher.publish(message);
+
+		// the received topic does not contain the share name
+		waitForRequestProcessing(flag);
+
+		subscription.stream().close();
+		TimeUnit.SECONDS.sleep(2);
+
+		assertThat(registry.getSubscriptions(sharedChannel)).isEmpty();
+	}
+
+	@Test
+	public void test_routes_updated_when_subscriptions_change() throws Exception {
+		final AtomicBoolean flag1 = new AtomicBoolean();
+		final AtomicBoolean flag2 = new AtomicBoolean();
+
+		final String channel = "ab/ba/routes/1";
+		final String payload = "abc";
+
+		final SubscriptionAck subscription1 = subscriber._subscribe("ab/ba/routes/#");
+		subscription1.stream().forEach(m -> flag1.set(true));
+
+		// @formatter:off
+        final Message message = mcb.channel(channel)
+                                   .content(ByteBuffer.wrap(payload.getBytes()))
+                                   .buildMessage();
+        // @formatter:on
+		publisher.publish(message);
+		waitForRequestProcessing(flag1);
+
+		// the route of the topic includes the new subscription
+		final SubscriptionAck subscription2 = subscriber._subscribe("ab/+/routes/1");
+		subscription2.stream().forEach(m -> flag2.set(true));
+
+		flag1.set(false);
+		publisher.publish(message);
+		waitForRequestProcessing(flag1);
+		waitForRequestProcessing(flag2);
+
+		// the route of the topic excludes the removed subscription
+		subscription1.stream().close();
+		TimeUnit.SECONDS.sleep(2);
+
+		final AtomicBoolean matched = new AtomicBoolean();
+		registry.matchSubscriptions(channel, s -> {
+			if (s.id.equals(subscription1.id())) {
+				matched.set(true);
+			}
+		});
+		assertThat(matched).isFalse();
+
+		subscription2.stream().close();
+	}
+
+	@Test
+	public void test_shared_and_overlapping_plain_subscription() throws Exception {
+		final AtomicInteger sharedCount = new AtomicInteger();
+		final AtomicInteger plainCount = new AtomicInteger();
+
+		final String channel = "ab/ba/mixed";
+		final String plainChannel = "ab/ba/+";
+		final String payload = "abc";
+		final int messages = 5;
+
+		// @formatter:off
+		final MessageContext sharedContext = mcb.channel(channel)
+		                                        .extensionEntry("shareGroup", "group-1")
+		                                        .buildContext();
+		// @formatter:on
+		final SubscriptionAck shared = subscriber._subscribe(sharedContext);
+		final SubscriptionAck plain = subscriber._subscribe(plainChannel);
+		shared.stream().forEach(m -> sharedCount.incrementAndGet());
+		plain.stream().forEach(m -> plainCount.incrementAndGet());
+		TimeUnit.SECONDS.sleep(2);
+
+		for (int i = 0; i < messages; i++) {
+			// @formatter:off
+			final Message message = mcb.channel(channel)
+			                           .content(ByteBuffer.wrap(payload.getBytes()))
+			                           .buildMessage();
+			// @formatter:on
+			publisher.publish(message);
+		}
+		TimeUnit.SECONDS.sleep(2);
+
+		// every copy is only dispatched to the subscription it has been received for
+		assertThat(sharedCount.get()).isEqualTo(messages);
+		assertThat(plainCount.get()).isEqualTo(messages);
+
+		shared.stream().close();
+		plain.stream().close();
+	}
+
+	@Test
+	public void test_subscription_rejected_by_broker() throws Exception {
+		// the broker rejects topic filters exceeding its maximum number of topic levels
+		final String channel = String.join("/", Collections.nCopies(300, "ab"));
+
+		assertThatThrownBy(() -> subscriber._subscribe(channel)).isInstanceOf(MqttSubscriptionException.class);
+		assertThat(registry.getSubscriptions(channel)).isEmpty();
+	}
+
 }
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.util.promise.PromiseFactory;
+import org.osgi.util.pushstream.PushEvent.EventType;
+
+import in.bytehue.messaging.mqtt5.provider.helper.PartitionedPushEventSource;
+
+public class PartitionedPushEventSourceTest {
+
+	private ExecutorService executor;
+	private final PromiseFactory promiseFactory = new PromiseFactory(null);
+
+	@Before
+	public void setup() {
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void teardown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void preservesOrderPerKey() throws Exception {
+		final int keys = 10;
+		final int eventsPerKey = 1_000;
+		final CountDownLatch latch = new CountDownLatch(keys * eventsPerKey);
+		final Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+		final Set<String> threads = ConcurrentHashMap.newKeySet();
+
+		final PartitionedPushEventSource<String> source = new PartitionedPushEventSource<>(4, 16, e -> e.split(":")[0],
+				executor, promiseFactory, e -> {
+				}, () -> {
+				});
+		source.open(e -> {
+			if (e.getType() == EventType.DATA) {
+				final String[] parts = e.getData().split(":");
+				// a key is never delivered concurrently, hence the lists need no locking
+				received.computeIfAbsent(parts[0], k -> new ArrayList<>()).add(Integer.parseInt(parts[1]));
+				threads.add(Thread.currentThread().getName());
+				latch.countDown();
+			}
+			return 0;
+		});
+		assertThat(source.isConnected()).isTrue();
+		assertThat(source.connectPromise().isDone()).isTrue();
+
+		for (int i = 0; i < eventsPerKey; i++) {
+			for (int k = 0; k < keys; k++) {
+				source.publish("key" + k + ":" + i);
+			}
+		}
+		assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(received).hasSize(keys);
+		for (final List<Integer> sequence : received.values()) {
+			assertThat(sequence).hasSize(eventsPerKey).isSorted();
+		}
+		assertThat(threads.size()).isGreaterThan(1);
+		source.close();
+	}
+
+	@Test
+	public void closesConsumersAndRunsCloseAction() throws Exception {
+		final AtomicBoolean isClosed = new AtomicBoolean();
+		final Set<EventType> events = new HashSet<>();
+
+		final PartitionedPushEventSource<String> source = new PartitionedPushEventSource<>(2, 16, e -> e, executor,
+				promiseFactory, e -> {
+				}, () -> isClosed.set(true));
+		source.open(e -> {
+			synchronized (events) {
+				events.add(e.getType());
+			}
+			return 0;
+		});
+		source.close();
+
+		assertThat(events).containsExactly(EventType.CLOSE);
+		assertThat(isClosed).isTrue();
+		assertThat(source.isConnected()).isFalse();
+	}
+
+	@Test
+	public void stopsDeliveringToConsumersRequestingToClose() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final List<String> received = new ArrayList<>();
+
+		final PartitionedPushEventSource<String> source = new PartitionedPushEventSource<>(1, 16, e -> e, executor,
+				promiseFactory, e -> {
+				}, () -> {
+				});
+		source.open(e -> {
+			received.add(e.getData());
+			latch.countDown();
+			return -1;
+		});
+		source.publish("1");
+		assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue();
+		source.publish("2");
+
+		Thread.sleep(100);
+		assertThat(received).containsExactly("1");
+		assertThat(source.isConnected()).isFalse();
+		source.close();
+	}
+
+	@Test
+	public void handsOverEventsOfFullLanesWithoutBlocking() throws Exception {
+		final int events = 10;
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger received = new AtomicInteger();
+		final AtomicInteger dropped = new AtomicInteger();
+
+		final PartitionedPushEventSource<String> source = new PartitionedPushEventSource<>(1, 2, e -> e, executor,
+				promiseFactory, e -> dropped.incrementAndGet(), () -> {
+				});
+		source.open(e -> {
+			if (e.getType() == EventType.DATA) {
+				release.await();
+				received.incrementAndGet();
+			}
+			return 0;
+		});
+		// the consumer holds at most one event and the lane at most two more
+		for (int i = 0; i < events; i++) {
+			source.publish(String.valueOf(i));
+		}
+		assertThat(dropped.get()).isGreaterThanOrEqualTo(events - 3);
+
+		release.countDown();
+		final long deadline = System.currentTimeMillis() + 1_000;
+		while (received.get() + dropped.get() < events && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(received.get() + dropped.get()).isEqualTo(events);
+		source.close();
+	}
+
+}
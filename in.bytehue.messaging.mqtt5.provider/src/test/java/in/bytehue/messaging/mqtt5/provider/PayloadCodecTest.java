@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider;
+
+import static in.bytehue.messaging.mqtt5.provider.helper.PayloadCodec.Algorithm.DEFLATE;
+import static in.bytehue.messaging.mqtt5.provider.helper.PayloadCodec.Algorithm.GZIP;
+import static in.bytehue.messaging.mqtt5.provider.helper.PayloadCodec.Algorithm.NONE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Test;
+
+import in.bytehue.messaging.mqtt5.provider.helper.PayloadCodec;
+import in.bytehue.messaging.mqtt5.provider.helper.PayloadCodec.Algorithm;
+
+public class PayloadCodecTest {
+
+	private static final long MAX_SIZE = PayloadCodec.DEFAULT_MAX_DECOMPRESSED_SIZE;
+
+	@Test
+	public void compressesInGzipFormat() throws IOException {
+		final byte[] data = telemetry();
+		final byte[] compressed = PayloadCodec.compress(data, GZIP);
+
+		assertThat(compressed.length).isLessThan(data.length / 5);
+		assertThat(readAll(new GZIPInputStream(new ByteArrayInputStream(compressed)))).isEqualTo(data);
+		assertThat(PayloadCodec.decompress(compressed, GZIP, MAX_SIZE)).isEqualTo(data);
+	}
+
+	@Test
+	public void decompressesGzipFromOtherEncoders() throws IOException {
+		final byte[] data = telemetry();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+			gzip.write(data);
+		}
+		assertThat(PayloadCodec.decompress(out.toByteArray(), GZIP, MAX_SIZE)).isEqualTo(data);
+	}
+
+	@Test
+	public void compressesInDeflateFormat() throws IOException {
+		final byte[] data = telemetry();
+		final byte[] compressed = PayloadCodec.compress(data, DEFLATE);
+
+		assertThat(readAll(new InflaterInputStream(new ByteArrayInputStream(compressed)))).isEqualTo(data);
+		assertThat(PayloadCodec.decompress(compressed, DEFLATE, MAX_SIZE)).isEqualTo(data);
+	}
+
+	@Test
+	public void handlesEmptyPayloads() {
+		assertThat(PayloadCodec.decompress(PayloadCodec.compress(new byte[0], GZIP), GZIP, MAX_SIZE)).isEmpty();
+		assertThat(PayloadCodec.decompress(PayloadCodec.compress(new byte[0], DEFLATE), DEFLATE, MAX_SIZE)).isEmpty();
+	}
+
+	@Test
+	public void rejectsCorruptPayloads() {
+		final byte[] data = telemetry();
+		final byte[] compressed = PayloadCodec.compress(data, DEFLATE);
+
+		assertThatThrownBy(() -> PayloadCodec.decompress(data, GZIP, MAX_SIZE)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> PayloadCodec.decompress(Arrays.copyOf(compressed, compressed.length / 2), DEFLATE, MAX_SIZE))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	public void rejectsPayloadsExceedingTheMaximumSize() throws IOException {
+		final byte[] data = new byte[1_048_576];
+		final byte[] gzip = PayloadCodec.compress(data, GZIP);
+		final byte[] deflate = PayloadCodec.compress(data, DEFLATE);
+
+		assertThat(deflate.length).isLessThan(65_536);
+		assertThatThrownBy(() -> PayloadCodec.decompress(gzip, GZIP, 65_536)).isInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(() -> PayloadCodec.decompress(deflate, DEFLATE, 65_536))
+				.isInstanceOf(IllegalStateException.class);
+
+		// a forged trailer does not bypass the maximum size
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (GZIPOutputStream forged = new GZIPOutputStream(out)) {
+			forged.write(data);
+		}
+		final byte[] forged = out.toByteArray();
+		Arrays.fill(forged, forged.length - 4, forged.length, (byte) 0);
+		assertThatThrownBy(() -> PayloadCodec.decompress(forged, GZIP, 65_536))
+				.isInstanceOf(IllegalStateException.class);
+
+		assertThat(PayloadCodec.decompress(deflate, DEFLATE, data.length)).isEqualTo(data);
+	}
+
+	@Test
+	public void resolvesAlgorithms() {
+		assertThat(Algorithm.of("GZip")).isEqualTo(GZIP);
+		assertThat(Algorithm.of("deflate")).isEqualTo(DEFLATE);
+		assertThat(Algorithm.of(null)).isEqualTo(NONE);
+		assertThat(Algorithm.of("br")).isNull();
+	}
+
+	private static byte[] telemetry() {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 1_000; i++) {
+			builder.append("{\"sensor\":\"temperature\",\"value\":").append(i % 10).append('}');
+		}
+		return builder.toString().getBytes(UTF_8);
+	}
+
+	private static byte[] readAll(final InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[1_024];
+		int length;
+		while ((length = in.read(buffer)) != -1) {
+			out.write(buffer, 0, length);
+		}
+		return out.toByteArray();
+	}
+
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import in.bytehue.messaging.mqtt5.provider.helper.SegmentedLog;
+
+public class SegmentedLogTest {
+
+	private File directory;
+
+	@Before
+	public void setup() throws Exception {
+		directory = Files.createTempDirectory("segmented-log").toFile();
+	}
+
+	@After
+	public void teardown() {
+		for (final File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void recoversUnacknowledgedEntriesInOrder() throws Exception {
+		final SegmentedLog log = new SegmentedLog(directory, 256, 4);
+		log.open((s, d) -> {
+		});
+		final List<Long> sequences = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			sequences.add(log.append(("message-" + i).getBytes(UTF_8)));
+		}
+		for (int i = 0; i < 15; i++) {
+			log.acknowledge(sequences.get(i));
+		}
+		log.close();
+
+		final Map<Long, String> recovered = new LinkedHashMap<>();
+		final SegmentedLog reopened = new SegmentedLog(directory, 256, 4);
+		reopened.open((s, d) -> recovered.put(s, new String(d, UTF_8)));
+
+		assertThat(recovered.keySet()).containsExactlyElementsOf(sequences.subList(15, 20));
+		assertThat(recovered.values()).containsExactly("message-15", "message-16", "message-17", "message-18",
+				"message-19");
+		assertThat(reopened.append(new byte[0])).isEqualTo(20L);
+		reopened.close();
+	}
+
+	@Test
+	public void deletesAcknowledgedSegments() throws Exception {
+		final SegmentedLog log = new SegmentedLog(directory, 128, 1);
+		log.open((s, d) -> {
+		});
+		final List<Long> sequences = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			sequences.add(log.append(new byte[32]));
+		}
+		final int numberOfSegments = directory.list().length;
+		assertThat(numberOfSegments).isGreaterThan(1);
+
+		for (final long sequence : sequences) {
+			log.acknowledge(sequence);
+		}
+		assertThat(directory.list()).hasSize(1);
+		log.close();
+	}
+
+	@Test
+	public void storesEntriesLargerThanSegment() throws Exception {
+		final SegmentedLog log = new SegmentedLog(directory, 64, 1);
+		log.open((s, d) -> {
+		});
+		log.append(new byte[1024]);
+		log.close();
+
+		final List<byte[]> recovered = new ArrayList<>();
+		final SegmentedLog reopened = new SegmentedLog(directory, 64, 1);
+		reopened.open((s, d) -> recovered.add(d));
+
+		assertThat(recovered).hasSize(1);
+		assertThat(recovered.get(0)).hasSize(1024);
+		reopened.close();
+	}
+
+}
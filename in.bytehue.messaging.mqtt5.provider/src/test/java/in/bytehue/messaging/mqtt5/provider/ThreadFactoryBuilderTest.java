@@ -315,4 +315,32 @@ public class ThreadFactoryBuilderTest {
 		}
 	}
 
+	@Test
+	public void virtualThreadsFallBackToPlatformThreadsTest() throws InterruptedException {
+		final ThreadFactory threadFactory = new ThreadFactoryBuilder() //
+				.setThreadFactoryName("virtual") //
+				.setThreadNameFormat("-%d") //
+				.setVirtual(true) //
+				.build();
+
+		final Thread thread = threadFactory.newThread(() -> {
+		});
+		assertEquals("virtual-0", thread.getName());
+		assertTrue("Thread must be a daemon thread", thread.isDaemon());
+
+		final CountDownLatch latch = new CountDownLatch(2);
+		final Set<String> threadNames = new HashSet<>();
+		final Runnable task = () -> {
+			synchronized (threadNames) {
+				threadNames.add(Thread.currentThread().getName());
+			}
+			latch.countDown();
+		};
+		ThreadFactoryBuilder.newThreadPerTaskExecutor(threadFactory).execute(task);
+		ThreadFactoryBuilder.newThreadPerTaskExecutor(threadFactory).execute(task);
+
+		assertTrue("Tasks didn't finish in time", latch.await(500, TimeUnit.MILLISECONDS));
+		assertEquals(2, threadNames.size());
+	}
+
 }
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import in.bytehue.messaging.mqtt5.provider.helper.TopicAliasStatistics;
+
+public class TopicAliasStatisticsTest {
+
+	private static final String TEMPERATURE = "devices/factory-01/line-07/machine-0042/sensors/temperature";
+	private static final String HUMIDITY = "devices/factory-01/line-07/machine-0042/sensors/humidity";
+
+	@Test
+	public void prefersFrequentLongTopics() {
+		final TopicAliasStatistics statistics = new TopicAliasStatistics();
+		statistics.setCapacity(2);
+
+		for (int i = 0; i < 10_000; i++) {
+			statistics.record(TEMPERATURE);
+			if (i % 2 == 0) {
+				statistics.record("a/b/c/d");
+			}
+			if (i % 5 == 0) {
+				statistics.record(HUMIDITY);
+			}
+			if (i % 10 == 0) {
+				statistics.record("devices/factory-01/" + i);
+			}
+		}
+		assertThat(statistics.hotTopics()).containsExactly(TEMPERATURE, HUMIDITY);
+		assertThat(statistics.hypotheticalSavedBytes()).isPositive().isLessThan(statistics.topicBytes());
+	}
+
+	@Test
+	public void tracksNothingWithoutGrantedAliases() {
+		final TopicAliasStatistics statistics = new TopicAliasStatistics();
+
+		for (int i = 0; i < 100; i++) {
+			statistics.record(TEMPERATURE);
+		}
+		assertThat(statistics.hotTopics()).isEmpty();
+		assertThat(statistics.publishes()).isEqualTo(100);
+		assertThat(statistics.hypotheticalSavedBytes()).isZero();
+	}
+
+	@Test
+	public void shrinksHotTopicsToCapacity() {
+		final TopicAliasStatistics statistics = new TopicAliasStatistics();
+		statistics.setCapacity(2);
+
+		for (int i = 0; i < 100; i++) {
+			statistics.record(TEMPERATURE);
+			statistics.record(TEMPERATURE);
+			statistics.record(HUMIDITY);
+		}
+		statistics.setCapacity(1);
+
+		assertThat(statistics.hotTopics()).containsExactly(TEMPERATURE);
+	}
+
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright 2020-2023 Amit Kumar Mondal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package in.bytehue.messaging.mqtt5.provider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import in.bytehue.messaging.mqtt5.provider.helper.TopicTrie;
+
+public class TopicTrieTest {
+
+	@Test
+	public void matchesExactFilters() {
+		final TopicTrie<String> trie = new TopicTrie<>();
+		trie.add("a/b", "1");
+		trie.add("a/b/c", "2");
+		trie.add("a", "3");
+
+		assertThat(match(trie, "a/b")).containsExactly("1");
+		assertThat(match(trie, "a/b/c")).containsExactly("2");
+		assertThat(match(trie, "a")).containsExactly("3");
+		assertThat(match(trie, "a/c")).isEmpty();
+	}
+
+	@Test
+	public void matchesSingleLevelWildcards() {
+		final TopicTrie<String> trie = new TopicTrie<>();
+		trie.add("a/+", "1");
+		trie.add("+/b", "2");
+		trie.add("+/+/c", "3");
+
+		assertThat(match(trie, "a/b")).containsExactlyInAnyOrder("1", "2");
+		assertThat(match(trie, "x/b")).containsExactly("2");
+		assertThat(match(trie, "x/y/c")).containsExactly("3");
+		assertThat(match(trie, "a")).isEmpty();
+	}
+
+	@Test
+	public void matchesMultiLevelWildcards() {
+		final TopicTrie<String> trie = new TopicTrie<>();
+		trie.add("sport/#", "1");
+		trie.add("#", "2");
+
+		assertThat(match(trie, "sport")).containsExactlyInAnyOrder("1", "2");
+		assertThat(match(trie, "sport/tennis/player1")).containsExactlyInAnyOrder("1", "2");
+		assertThat(match(trie, "news")).containsExactly("2");
+	}
+
+	@Test
+	public void doesNotMatchSystemTopicsWithLeadingWildcards() {
+		final TopicTrie<String> trie = new TopicTrie<>();
+		trie.add("#", "1");
+		trie.add("+/info", "2");
+		trie.add("$SYS/#", "3");
+
+		assertThat(match(trie, "$SYS/info")).containsExactly("3");
+	}
+
+	@Test
+	public void matchesMultipleValuesOfSameFilter() {
+		final TopicTrie<String> trie = new TopicTrie<>();
+		trie.add("a/b", "1");
+		trie.add("a/b", "2");
+
+		assertThat(match(trie, "a/b")).containsExactlyInAnyOrder("1", "2");
+
+		trie.remove("a/b", "1");
+
+		assertThat(match(trie, "a/b")).containsExactly("2");
+	}
+
+	@Test
+	public void becomesEmptyAfterRemovingAllValues() {
+		final TopicTrie<String> trie = new TopicTrie<>();
+		for (int i = 0; i < 100; i++) {
+			trie.add("a/" + i + "/#", String.valueOf(i));
+		}
+		assertThat(match(trie, "a/42/b")).containsExactly("42");
+
+		for (int i = 0; i < 100; i++) {
+			trie.remove("a/" + i + "/#", String.valueOf(i));
+		}
+		assertThat(trie.isEmpty()).isTrue();
+		assertThat(match(trie, "a/42/b")).isEmpty();
+	}
+
+	private static List<String> match(final TopicTrie<String> trie, final String topic) {
+		final List<String> values = new ArrayList<>();
+		trie.match(topic, values::add);
+		return values;
+	}
+
+}